@@ -1,7 +1,5 @@
 package com.jahirtrap.vosk;
 
-import android.annotation.SuppressLint;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -12,19 +10,14 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.preference.PreferenceManager;
 
 import org.json.JSONObject;
 
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Set;
 
-@SuppressLint("MutatingSharedPrefs")
 public class AddEditTemplateActivity extends AppCompatActivity {
     private EditText editLabel;
     private LinearLayout fieldsContainer;
-    private SharedPreferences preferences;
     private ImageView btnAddField;
     private Button btnSaveTemplate;
 
@@ -42,8 +35,6 @@ public class AddEditTemplateActivity extends AppCompatActivity {
         btnAddField = findViewById(R.id.btn_add_field);
         btnSaveTemplate = findViewById(R.id.btn_save_template);
 
-        preferences = PreferenceManager.getDefaultSharedPreferences(this);
-
         btnAddField.setOnClickListener(v -> {
             addField(null);
             checkFormValidity();
@@ -132,14 +123,7 @@ public class AddEditTemplateActivity extends AppCompatActivity {
             template.put("label", label);
             template.put("data", data);
 
-            SharedPreferences.Editor editor = preferences.edit();
-            editor.putString(label, template.toString());
-
-            Set<String> templates = preferences.getStringSet("templates", new HashSet<>());
-            templates.add(label);
-            editor.putStringSet("templates", templates);
-
-            editor.apply();
+            if (!TemplateRegistry.getInstance(this).save(label, template.toString())) return;
 
             setResult(RESULT_OK);
             finish();
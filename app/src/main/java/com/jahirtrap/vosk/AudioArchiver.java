@@ -0,0 +1,324 @@
+package com.jahirtrap.vosk;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+public class AudioArchiver implements AudioCaptureEngine.Consumer {
+    private static final String TAG = "AudioArchiver", MIME_TYPE = MediaFormat.MIMETYPE_AUDIO_AAC;
+    private static final int SAMPLE_RATE = AudioCaptureEngine.SAMPLE_RATE, RING_SIZE = 1 << 17, CHUNK_RING_SIZE = 1 << 10;
+    private static final int SEGMENT_SAMPLES = SAMPLE_RATE * 30, FRAME_SAMPLES = 1024, BIT_RATE = 32000, GAP_MS = 200;
+    // Results trail their audio by the decode backlog, so finished segments keep accepting marks this long
+    private static final long MARK_DELAY_MS = 10_000;
+    private final File root;
+    private volatile Session session;
+
+    public AudioArchiver(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public void onStart() {
+        Session next = new Session(new File(root, String.valueOf(System.currentTimeMillis())));
+        session = next;
+        next.encoderThread.start();
+    }
+
+    @Override
+    public void onAudio(short[] buffer, int read) {
+        Session current = session;
+        if (current != null) current.write(buffer, read);
+    }
+
+    @Override
+    public void onStop() {
+        Session current = session;
+        if (current == null) return;
+        session = null;
+        current.running = false;
+        LockSupport.unpark(current.encoderThread);
+    }
+
+    // startMs and endMs are the wall-clock span of the result's words, on the same clock as the capture timestamps
+    public void markResult(int slot, long startMs, long endMs) {
+        Session current = session;
+        if (current != null) current.marks.add(new long[]{slot, startMs, endMs, System.currentTimeMillis()});
+    }
+
+    public long getOverruns() {
+        Session current = session;
+        return current == null ? 0 : current.overruns;
+    }
+
+    private static class Session {
+        private final short[] ring = new short[RING_SIZE];
+        private final long[] chunkPositions = new long[CHUNK_RING_SIZE], chunkTimes = new long[CHUNK_RING_SIZE];
+        private final ConcurrentLinkedQueue<long[]> marks = new ConcurrentLinkedQueue<>();
+        private final ArrayList<Segment> finished = new ArrayList<>();
+        private final File dir;
+        private final Thread encoderThread;
+        private volatile long writePosition = 0, readPosition = 0, chunkWrite = 0, chunkRead = 0, overruns = 0;
+        private volatile boolean running = true;
+
+        private Session(File dir) {
+            this.dir = dir;
+            this.encoderThread = new Thread(this::encode, TAG);
+        }
+
+        private void write(short[] buffer, int read) {
+            long time = System.currentTimeMillis() - read * 1000L / SAMPLE_RATE;
+            long write = writePosition, chunk = chunkWrite;
+            if (write + read - readPosition > RING_SIZE || chunk - chunkRead >= CHUNK_RING_SIZE) {
+                overruns++;
+                return;
+            }
+            int index = (int) (write & (RING_SIZE - 1));
+            int first = Math.min(read, RING_SIZE - index);
+            System.arraycopy(buffer, 0, ring, index, first);
+            if (first < read) System.arraycopy(buffer, first, ring, 0, read - first);
+            int slot = (int) (chunk & (CHUNK_RING_SIZE - 1));
+            chunkPositions[slot] = write;
+            chunkTimes[slot] = time;
+            chunkWrite = chunk + 1;
+            writePosition = write + read;
+            LockSupport.unpark(encoderThread);
+        }
+
+        private void encode() {
+            if (!dir.mkdirs()) {
+                Log.w(TAG, "Failed to create " + dir);
+                return;
+            }
+
+            short[] frame = new short[FRAME_SAMPLES];
+            Segment segment = null;
+            int segments = 0;
+            try {
+                while (true) {
+                    boolean stopping = !running;
+                    long write = writePosition, chunks = chunkWrite;
+                    long available = write - readPosition;
+                    if (available < FRAME_SAMPLES && !stopping) {
+                        LockSupport.parkNanos(20_000_000L);
+                        continue;
+                    }
+                    if (available == 0) break;
+
+                    while (chunkRead + 1 < chunks && chunkPosition(chunkRead + 1) <= readPosition) {
+                        boolean gap = isGap(chunkRead);
+                        chunkRead++;
+                        if (gap && segment != null) {
+                            collectMarks(segment, false);
+                            finish(segment);
+                            segment = null;
+                        }
+                    }
+                    long limit = write;
+                    for (long chunk = chunkRead + 1; chunk < chunks; chunk++) {
+                        if (isGap(chunk - 1)) {
+                            limit = chunkPosition(chunk);
+                            break;
+                        }
+                    }
+
+                    if (segment == null) {
+                        segment = new Segment(new File(dir, String.format(Locale.ROOT, "%04d.m4a", segments++)),
+                                readPosition, timeAt(readPosition));
+                    }
+
+                    int count = (int) Math.min(Math.min(limit - readPosition, FRAME_SAMPLES), segment.end - readPosition);
+                    int index = (int) (readPosition & (RING_SIZE - 1));
+                    int first = Math.min(count, RING_SIZE - index);
+                    System.arraycopy(ring, index, frame, 0, first);
+                    if (first < count) System.arraycopy(ring, 0, frame, first, count - first);
+                    readPosition += count;
+                    segment.write(frame, count);
+
+                    collectMarks(segment, false);
+                    if (readPosition == segment.end) {
+                        finish(segment);
+                        segment = null;
+                    }
+                    writeFinished(System.currentTimeMillis() - MARK_DELAY_MS);
+                }
+            } catch (IOException | RuntimeException e) {
+                e.fillInStackTrace();
+            }
+
+            collectMarks(segment, true);
+            if (segment != null) {
+                try {
+                    finish(segment);
+                } catch (IOException | RuntimeException e) {
+                    e.fillInStackTrace();
+                }
+            }
+            writeFinished(Long.MAX_VALUE);
+            if (overruns > 0) Log.w(TAG, "Dropped " + overruns + " buffers");
+        }
+
+        private void finish(Segment segment) throws IOException {
+            segment.close();
+            finished.add(segment);
+        }
+
+        private void writeFinished(long before) {
+            while (!finished.isEmpty() && finished.get(0).endTime() < before) {
+                try {
+                    finished.remove(0).writeIndex();
+                } catch (IOException e) {
+                    e.fillInStackTrace();
+                }
+            }
+        }
+
+        private long chunkPosition(long chunk) {
+            return chunkPositions[(int) (chunk & (CHUNK_RING_SIZE - 1))];
+        }
+
+        private long chunkTime(long chunk) {
+            return chunkTimes[(int) (chunk & (CHUNK_RING_SIZE - 1))];
+        }
+
+        private boolean isGap(long chunk) {
+            long expected = chunkTime(chunk) + (chunkPosition(chunk + 1) - chunkPosition(chunk)) * 1000 / SAMPLE_RATE;
+            return Math.abs(chunkTime(chunk + 1) - expected) > GAP_MS;
+        }
+
+        private long timeAt(long position) {
+            return chunkTime(chunkRead) + (position - chunkPosition(chunkRead)) * 1000 / SAMPLE_RATE;
+        }
+
+        // A mark goes to the segment holding its first word; marks for audio not encoded yet wait in the queue
+        private void collectMarks(Segment current, boolean all) {
+            long[] mark;
+            while ((mark = marks.peek()) != null) {
+                if (!all && current != null && mark[1] >= current.endTime()) break;
+                marks.poll();
+                Segment target = current != null && mark[1] >= current.startedAt ? current : null;
+                for (int i = finished.size() - 1; i >= 0 && target == null; i--) {
+                    if (finished.get(i).startedAt <= mark[1]) target = finished.get(i);
+                }
+                if (target == null) target = current != null ? current : finished.isEmpty() ? null : finished.get(0);
+                if (target != null) target.marks.add(mark);
+            }
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final long end, startedAt;
+        private final ArrayList<long[]> marks = new ArrayList<>();
+        private final MediaCodec codec;
+        private final MediaMuxer muxer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private int track = -1;
+        private long samples = 0;
+
+        private Segment(File file, long start, long startedAt) throws IOException {
+            this.file = file;
+            this.end = start + SEGMENT_SAMPLES;
+            this.startedAt = startedAt;
+
+            MediaFormat format = MediaFormat.createAudioFormat(MIME_TYPE, SAMPLE_RATE, 1);
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+            format.setInteger(MediaFormat.KEY_BIT_RATE, BIT_RATE);
+            format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, FRAME_SAMPLES * 2);
+            codec = MediaCodec.createEncoderByType(MIME_TYPE);
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        }
+
+        private void write(short[] frame, int count) {
+            int input = codec.dequeueInputBuffer(10_000);
+            while (input < 0) {
+                drain(false);
+                input = codec.dequeueInputBuffer(10_000);
+            }
+            ByteBuffer buffer = codec.getInputBuffer(input);
+            buffer.clear();
+            buffer.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(frame, 0, count);
+            codec.queueInputBuffer(input, 0, count * 2, samples * 1000000L / SAMPLE_RATE, 0);
+            samples += count;
+            drain(false);
+        }
+
+        private void drain(boolean endOfStream) {
+            int attempts = 0;
+            while (true) {
+                int output = codec.dequeueOutputBuffer(info, endOfStream ? 10_000 : 0);
+                if (output == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                    if (!endOfStream || ++attempts > 50) return;
+                } else if (output == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    track = muxer.addTrack(codec.getOutputFormat());
+                    muxer.start();
+                } else if (output >= 0) {
+                    ByteBuffer buffer = codec.getOutputBuffer(output);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0 && track != -1)
+                        muxer.writeSampleData(track, buffer, info);
+                    codec.releaseOutputBuffer(output, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) return;
+                }
+            }
+        }
+
+        private long endTime() {
+            return startedAt + samples * 1000 / SAMPLE_RATE;
+        }
+
+        private void close() throws IOException {
+            int input = codec.dequeueInputBuffer(10_000);
+            if (input >= 0) {
+                codec.queueInputBuffer(input, 0, 0, samples * 1000000L / SAMPLE_RATE, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                drain(true);
+            }
+            codec.stop();
+            codec.release();
+            if (track != -1) muxer.stop();
+            muxer.release();
+        }
+
+        private void writeIndex() throws IOException {
+            long durationMs = samples * 1000 / SAMPLE_RATE;
+            try {
+                JSONArray results = new JSONArray();
+                for (long[] mark : marks) {
+                    results.put(new JSONObject()
+                            .put("slot", mark[0])
+                            .put("offsetMs", Math.min(Math.max(mark[1] - startedAt, 0), durationMs))
+                            .put("endMs", Math.min(Math.max(mark[2] - startedAt, 0), durationMs))
+                            .put("time", mark[3]));
+                }
+                JSONObject entry = new JSONObject()
+                        .put("file", file.getName())
+                        .put("start", startedAt)
+                        .put("durationMs", durationMs)
+                        .put("results", results);
+                try (OutputStream out = new FileOutputStream(new File(file.getParentFile(), "index.jsonl"), true)) {
+                    out.write((entry + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (JSONException e) {
+                e.fillInStackTrace();
+            }
+        }
+    }
+}
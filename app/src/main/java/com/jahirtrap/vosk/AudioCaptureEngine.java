@@ -0,0 +1,133 @@
+package com.jahirtrap.vosk;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class AudioCaptureEngine {
+    public static final int SAMPLE_RATE = 16000;
+    private static final int BUFFER_SIZE = SAMPLE_RATE / 5;
+    private final short[] buffer = new short[BUFFER_SIZE];
+    private final Object lock = new Object();
+    private volatile Consumer[] consumers = new Consumer[0];
+    private volatile boolean isCapturing = false, isPaused = false;
+    private AudioRecord audioRecord;
+    private volatile Thread captureThread;
+
+    public interface Consumer {
+        void onAudio(short[] buffer, int read);
+
+        default void onStart() {
+        }
+
+        default void onStop() {
+        }
+
+        default void onError(Exception e) {
+        }
+    }
+
+    public void addConsumer(Consumer consumer) {
+        synchronized (lock) {
+            if (Arrays.asList(consumers).contains(consumer)) return;
+            Consumer[] next = Arrays.copyOf(consumers, consumers.length + 1);
+            next[consumers.length] = consumer;
+            consumers = next;
+        }
+    }
+
+    public void removeConsumer(Consumer consumer) {
+        synchronized (lock) {
+            int index = Arrays.asList(consumers).indexOf(consumer);
+            if (index == -1) return;
+            Consumer[] next = new Consumer[consumers.length - 1];
+            System.arraycopy(consumers, 0, next, 0, index);
+            System.arraycopy(consumers, index + 1, next, index, next.length - index);
+            consumers = next;
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    public void start() throws IOException {
+        if (captureThread != null) return;
+
+        int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, BUFFER_SIZE * 2 * 2));
+
+        if (audioRecord.getState() == AudioRecord.STATE_UNINITIALIZED) {
+            audioRecord.release();
+            audioRecord = null;
+            throw new IOException("Failed to initialize recorder. Microphone might be already in use.");
+        }
+
+        isPaused = false;
+        isCapturing = true;
+        captureThread = new Thread(this::capture, "AudioCapture");
+        captureThread.start();
+    }
+
+    public void stop() {
+        Thread thread = captureThread;
+        if (thread == null) return;
+        isCapturing = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseRecorder();
+    }
+
+    public void setPaused(boolean paused) {
+        isPaused = paused;
+    }
+
+    public boolean isCapturing() {
+        return captureThread != null;
+    }
+
+    private void capture() {
+        audioRecord.startRecording();
+        if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_STOPPED) {
+            isCapturing = false;
+            releaseRecorder();
+            dispatchError(new IOException("Failed to start recording. Microphone might be already in use."));
+            return;
+        }
+
+        for (Consumer consumer : consumers) consumer.onStart();
+
+        while (isCapturing) {
+            int read = audioRecord.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                dispatchError(new IOException("Error reading from microphone: " + read));
+                break;
+            }
+            if (read == 0 || isPaused) continue;
+
+            Consumer[] targets = consumers;
+            for (int i = 0; i < targets.length; i++) {
+                targets[i].onAudio(buffer, read);
+            }
+        }
+
+        audioRecord.stop();
+        for (Consumer consumer : consumers) consumer.onStop();
+    }
+
+    private synchronized void releaseRecorder() {
+        captureThread = null;
+        if (audioRecord == null) return;
+        audioRecord.release();
+        audioRecord = null;
+    }
+
+    private void dispatchError(Exception e) {
+        for (Consumer consumer : consumers) consumer.onError(e);
+    }
+}
@@ -6,17 +6,21 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.util.AttributeSet;
+import android.view.Choreographer;
 import android.view.View;
 
 import androidx.annotation.NonNull;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class AudioVisualizerView extends View {
     private static final int LINE_WIDTH = 5, LINE_SPACE = 5;
     private static final float SCALE_FACTOR = 4000.0f, MIN_AMPLITUDE = 120.0f;
-    private List<Float> amplitudes;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> {
+        frameScheduled = false;
+        invalidate();
+    };
+    private float[] amplitudes = new float[0], points = new float[0];
+    private int head = 0, count = 0;
+    private boolean frameScheduled = false;
     private Paint linePaint;
 
     public AudioVisualizerView(Context context) {
@@ -36,7 +40,6 @@ public class AudioVisualizerView extends View {
 
     private void init(Context context, AttributeSet attrs) {
         linePaint = new Paint();
-        amplitudes = new ArrayList<>();
 
         if (attrs != null) {
             TypedArray a = context.getTheme().obtainStyledAttributes(attrs, R.styleable.visualizer, 0, 0);
@@ -53,44 +56,76 @@ public class AudioVisualizerView extends View {
         linePaint.setStrokeWidth(LINE_WIDTH);
     }
 
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        int capacity = w / (LINE_WIDTH + LINE_SPACE);
+        if (capacity == amplitudes.length) return;
+
+        float[] resized = new float[capacity];
+        int kept = Math.min(count, capacity);
+        for (int i = 0; i < kept; i++) resized[i] = get(count - kept + i);
+        amplitudes = resized;
+        points = new float[capacity * 4];
+        head = capacity == 0 ? 0 : kept % capacity;
+        count = kept;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        frameScheduled = false;
+    }
+
     @Override
     protected void onDraw(@NonNull Canvas canvas) {
         super.onDraw(canvas);
+        if (count == 0) return;
 
-        int width = getWidth();
         int height = getHeight();
-
-        int centerY = height / 2;
-        int centerX = width / 2;
-
-        int numLines = width / (LINE_WIDTH + LINE_SPACE);
-
-        for (int i = 0; i < numLines; i++) {
-            int index = amplitudes.size() - numLines + i;
-            if (index < 1) continue;
-
-            float amplitude = amplitudes.get(index);
-            amplitude = Math.max(amplitude, MIN_AMPLITUDE);
-            float scaledAmplitude = amplitude / SCALE_FACTOR * ((float) height / 2);
-
-            float startX = centerX + (i - (float) numLines / 2) * (LINE_WIDTH + LINE_SPACE);
-            float startY = centerY - scaledAmplitude;
-            float stopY = centerY + scaledAmplitude;
-
-            canvas.drawLine(startX, startY, startX, stopY, linePaint);
+        float centerY = height / 2f;
+        float centerX = getWidth() / 2f;
+        int numLines = amplitudes.length;
+        float scale = ((float) height / 2) / SCALE_FACTOR;
+
+        int p = 0;
+        for (int i = numLines - count; i < numLines; i++) {
+            float scaledAmplitude = Math.max(get(count - numLines + i), MIN_AMPLITUDE) * scale;
+            float x = centerX + (i - (float) numLines / 2) * (LINE_WIDTH + LINE_SPACE);
+            points[p++] = x;
+            points[p++] = centerY - scaledAmplitude;
+            points[p++] = x;
+            points[p++] = centerY + scaledAmplitude;
         }
+
+        canvas.drawLines(points, 0, p, linePaint);
     }
 
-    public void addAmplitude(float amplitude) {
-        if (amplitudes.size() * (LINE_WIDTH + LINE_SPACE) >= getWidth()) {
-            amplitudes.remove(0);
+    public void addAmplitudes(float[] values, int length) {
+        if (amplitudes.length == 0) return;
+        for (int i = 0; i < length; i++) {
+            amplitudes[head] = values[i];
+            head = (head + 1) % amplitudes.length;
         }
-        amplitudes.add(amplitude);
-        invalidate();
+        count = Math.min(count + length, amplitudes.length);
+        scheduleFrame();
     }
 
     public void clear() {
-        amplitudes.clear();
-        invalidate();
+        head = 0;
+        count = 0;
+        scheduleFrame();
+    }
+
+    private float get(int index) {
+        int i = head - count + index;
+        return amplitudes[i < 0 ? i + amplitudes.length : i];
+    }
+
+    private void scheduleFrame() {
+        if (frameScheduled) return;
+        frameScheduled = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
     }
 }
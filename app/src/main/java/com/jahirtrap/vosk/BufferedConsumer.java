@@ -0,0 +1,98 @@
+package com.jahirtrap.vosk;
+
+import android.util.Log;
+
+import java.util.concurrent.locks.LockSupport;
+
+public class BufferedConsumer implements AudioCaptureEngine.Consumer {
+    private static final String TAG = "BufferedConsumer";
+    private static final int SLOT_SIZE = AudioCaptureEngine.SAMPLE_RATE / 10, SLOTS = 32;
+    private final short[][] slots = new short[SLOTS][SLOT_SIZE];
+    private final int[] lengths = new int[SLOTS];
+    private final AudioCaptureEngine.Consumer target;
+    private final Runnable onDrained;
+    private volatile long writeSlot = 0, readSlot = 0, overruns = 0;
+    private volatile boolean running = false;
+    private Thread worker;
+    private boolean released = false, drained = false;
+
+    public BufferedConsumer(AudioCaptureEngine.Consumer target, Runnable onDrained) {
+        this.target = target;
+        this.onDrained = onDrained;
+    }
+
+    @Override
+    public void onStart() {
+        running = true;
+        synchronized (this) {
+            if (worker != null) return;
+            worker = new Thread(this::drain, TAG);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void onAudio(short[] buffer, int read) {
+        long write = writeSlot;
+        for (int offset = 0; offset < read; offset += SLOT_SIZE) {
+            if (write - readSlot >= SLOTS) {
+                overruns++;
+                break;
+            }
+            int slot = (int) (write % SLOTS), length = Math.min(SLOT_SIZE, read - offset);
+            System.arraycopy(buffer, offset, slots[slot], 0, length);
+            lengths[slot] = length;
+            writeSlot = ++write;
+        }
+        LockSupport.unpark(worker);
+    }
+
+    @Override
+    public void onStop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        target.onError(e);
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    // Stops a worker the capture thread never stopped, then runs onDrained once it no longer touches the target, or right away if it never started
+    public void release() {
+        onStop();
+        synchronized (this) {
+            released = true;
+            if (worker != null && !drained) return;
+        }
+        onDrained.run();
+    }
+
+    private void drain() {
+        target.onStart();
+        while (true) {
+            boolean stopping = !running;
+            long read = readSlot;
+            if (read == writeSlot) {
+                if (stopping) break;
+                LockSupport.parkNanos(this, 50_000_000L);
+                continue;
+            }
+            int slot = (int) (read % SLOTS);
+            target.onAudio(slots[slot], lengths[slot]);
+            readSlot = read + 1;
+        }
+        target.onStop();
+        if (overruns > 0) Log.w(TAG, "Dropped " + overruns + " slots");
+
+        synchronized (this) {
+            drained = true;
+            if (!released) return;
+        }
+        onDrained.run();
+    }
+}
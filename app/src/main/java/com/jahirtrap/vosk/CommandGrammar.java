@@ -0,0 +1,23 @@
+package com.jahirtrap.vosk;
+
+import org.json.JSONArray;
+
+import java.util.Collection;
+
+public final class CommandGrammar {
+    private static final String UNKNOWN = "[unk]";
+
+    private CommandGrammar() {
+    }
+
+    public static String build(String lineCommand, Collection<String> fieldNames) {
+        String command = lineCommand.toLowerCase().trim();
+        JSONArray phrases = new JSONArray();
+        phrases.put(command);
+        for (String fieldName : fieldNames) {
+            phrases.put(command + " " + fieldName.toLowerCase().trim());
+        }
+        phrases.put(UNKNOWN);
+        return phrases.toString();
+    }
+}
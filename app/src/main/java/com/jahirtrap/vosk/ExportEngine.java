@@ -0,0 +1,223 @@
+package com.jahirtrap.vosk;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ExportEngine {
+    private static final String TAG = "ExportEngine";
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final HashMap<String, Long> lastDurations = new HashMap<>();
+    private final Set<Job> jobs = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Context context;
+
+    public interface Listener {
+        void onProgress(int percent);
+
+        void onComplete(String format, long elapsedMs);
+
+        void onCancelled();
+
+        void onError(Exception e);
+    }
+
+    public interface Task {
+        void write(OutputStream outputStream, FormExporter.Progress progress) throws IOException;
+    }
+
+    public static class Job implements FormExporter.Progress {
+        private final Listener listener;
+        private final Handler mainHandler;
+        private volatile boolean cancelled = false, detached = false;
+        private int lastPercent = -1;
+
+        private Job(Listener listener, Handler mainHandler) {
+            this.listener = listener;
+            this.mainHandler = mainHandler;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        // Stops every callback, including ones already queued on the main thread
+        public void detach() {
+            detached = true;
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void onProgress(int done, int total) {
+            int percent = total == 0 ? 100 : done * 100 / total;
+            if (percent == lastPercent) return;
+            lastPercent = percent;
+            post(() -> listener.onProgress(percent));
+        }
+
+        private void post(Runnable callback) {
+            mainHandler.post(() -> {
+                if (!detached) callback.run();
+            });
+        }
+    }
+
+    public ExportEngine(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public Job export(String format, FormSnapshot form, Listener listener) {
+        return export(format, form.getLabel(), (outputStream, progress) -> new FormExporter(progress).write(format, outputStream, form), listener);
+    }
+
+    public Job export(String format, String fileName, Task task, Listener listener) {
+        Job job = new Job(listener, mainHandler);
+        synchronized (this) {
+            jobs.add(job);
+        }
+        executor.execute(() -> run(job, format, fileName, task));
+        return job;
+    }
+
+    public synchronized long getLastDurationMs(String format) {
+        Long duration = lastDurations.get(format);
+        return duration == null ? -1 : duration;
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            for (Job job : jobs) job.detach();
+            jobs.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    private void run(Job job, String format, String fileName, Task task) {
+        try {
+            write(job, format, fileName, task);
+        } finally {
+            synchronized (this) {
+                jobs.remove(job);
+            }
+        }
+    }
+
+    private void write(Job job, String format, String fileName, Task task) {
+        if (job.isCancelled()) {
+            job.post(job.listener::onCancelled);
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        Target target = null;
+        boolean done = false;
+        try {
+            target = openTarget(fileName, format);
+            try (OutputStream outputStream = target.outputStream) {
+                task.write(outputStream, job);
+            }
+            // A cancel that lands after the exporter's last check still leaves no file behind
+            if (job.isCancelled()) throw new CancellationException();
+            done = true;
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            synchronized (this) {
+                lastDurations.put(format, elapsed);
+            }
+            Log.d(TAG, "Exported " + format + " in " + elapsed + " ms");
+            job.post(() -> job.listener.onComplete(format, elapsed));
+        } catch (CancellationException e) {
+            job.post(job.listener::onCancelled);
+        } catch (Exception e) {
+            job.post(() -> job.listener.onError(e));
+        } finally {
+            if (!done && target != null) target.discard();
+        }
+    }
+
+    private Target openTarget(String fileName, String format) throws IOException {
+        String displayName = fileName + "." + format;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentValues contentValues = new ContentValues();
+            contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+            contentValues.put(MediaStore.MediaColumns.MIME_TYPE, getMimeType(format));
+            contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, "Documents/");
+
+            ContentResolver resolver = context.getContentResolver();
+            Uri uri = resolver.insert(MediaStore.Files.getContentUri("external"), contentValues);
+            if (uri == null) throw new IOException("Failed to create " + displayName);
+            OutputStream outputStream;
+            try {
+                outputStream = resolver.openOutputStream(uri);
+                if (outputStream == null) throw new IOException("Failed to open " + displayName);
+            } catch (IOException | RuntimeException e) {
+                resolver.delete(uri, null, null);
+                throw e;
+            }
+            return new Target(outputStream, () -> resolver.delete(uri, null, null));
+        } else {
+            File dir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
+            if (!dir.exists()) throw new IOException("Missing directory " + dir);
+            File file = new File(dir, displayName);
+            return new Target(Files.newOutputStream(file.toPath()), file::delete);
+        }
+    }
+
+    private static String getMimeType(String format) {
+        switch (format) {
+            case "pdf":
+                return "application/pdf";
+            case "docx":
+                return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+            case "xlsx":
+                return "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+            case "csv":
+                return "text/csv";
+            default:
+                return "text/plain";
+        }
+    }
+
+    private static class Target {
+        private final OutputStream outputStream;
+        private final Runnable discard;
+
+        private Target(OutputStream outputStream, Runnable discard) {
+            this.outputStream = outputStream;
+            this.discard = discard;
+        }
+
+        private void discard() {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                e.fillInStackTrace();
+            }
+            discard.run();
+        }
+    }
+}
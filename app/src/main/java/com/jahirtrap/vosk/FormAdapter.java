@@ -0,0 +1,131 @@
+package com.jahirtrap.vosk;
+
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+public class FormAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    private static final int TYPE_LABEL = 0, TYPE_FIELD = 1;
+    private FormModel form = FormModel.empty();
+    private RecyclerView recyclerView;
+    private int pendingFocus = -1;
+
+    public void setForm(FormModel form) {
+        this.form = form;
+        pendingFocus = -1;
+        notifyDataSetChanged();
+    }
+
+    public void refresh() {
+        notifyDataSetChanged();
+    }
+
+    public void setText(int slot, String text) {
+        FieldHolder holder = findHolder(slot);
+        if (holder != null) holder.sync.apply(text, form.getCommitted(slot).length());
+    }
+
+    public void focus(int slot) {
+        FieldHolder holder = findHolder(slot);
+        if (holder != null) {
+            holder.focus();
+        } else if (recyclerView != null) {
+            pendingFocus = slot;
+            recyclerView.scrollToPosition(slot + 1);
+        }
+    }
+
+    private FieldHolder findHolder(int slot) {
+        if (recyclerView == null) return null;
+        RecyclerView.ViewHolder holder = recyclerView.findViewHolderForAdapterPosition(slot + 1);
+        return holder instanceof FieldHolder && ((FieldHolder) holder).slot == slot ? (FieldHolder) holder : null;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return form.size() + 1;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return position == 0 ? TYPE_LABEL : TYPE_FIELD;
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewType == TYPE_LABEL) {
+            TextView labelView = new TextView(parent.getContext());
+            labelView.setTextSize(20);
+            labelView.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            return new LabelHolder(labelView);
+        }
+        EditText editText = new EditText(parent.getContext());
+        editText.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        editText.setSaveEnabled(false);
+        return new FieldHolder(editText);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        if (holder instanceof LabelHolder) {
+            ((LabelHolder) holder).labelView.setText(form.getLabel());
+            return;
+        }
+        FieldHolder fieldHolder = (FieldHolder) holder;
+        int slot = position - 1;
+        fieldHolder.slot = slot;
+        fieldHolder.editText.setHint(form.getName(slot));
+        fieldHolder.sync.set(form.getPartial(slot));
+        if (slot == pendingFocus) {
+            pendingFocus = -1;
+            fieldHolder.editText.post(fieldHolder::focus);
+        }
+    }
+
+    private static class LabelHolder extends RecyclerView.ViewHolder {
+        private final TextView labelView;
+
+        private LabelHolder(TextView labelView) {
+            super(labelView);
+            this.labelView = labelView;
+        }
+    }
+
+    private class FieldHolder extends RecyclerView.ViewHolder {
+        private final EditText editText;
+        private final TextSync sync;
+        private int slot = -1;
+
+        private FieldHolder(EditText editText) {
+            super(editText);
+            this.editText = editText;
+            this.sync = new TextSync(editText, text -> {
+                if (slot < 0 || slot >= form.size()) return;
+                form.setCommitted(slot, text.toString());
+                form.setPartial(slot, text.toString());
+            });
+            editText.setOnFocusChangeListener((v, hasFocus) -> {
+                if (hasFocus && slot >= 0 && slot < form.size()) form.setActiveSlot(slot);
+            });
+        }
+
+        private void focus() {
+            editText.requestFocus();
+            editText.setSelection(editText.getText().length());
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.jahirtrap.vosk;
+
+import com.itextpdf.kernel.colors.ColorConstants;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.property.AreaBreakType;
+import com.itextpdf.layout.property.UnitValue;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageSz;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSectPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblWidth;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.STTblWidth;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+public class FormExporter {
+    private static final String LABEL_HEADER = "Plantilla", DATE_HEADER = "Fecha", FIELD_HEADER = "Campo", VALUE_HEADER = "Valor";
+    private final Progress progress;
+
+    public interface Progress {
+        void onProgress(int done, int total);
+
+        boolean isCancelled();
+    }
+
+    public FormExporter(Progress progress) {
+        this.progress = progress;
+    }
+
+    public void write(String format, OutputStream outputStream, FormSnapshot form) throws IOException {
+        switch (format) {
+            case "pdf":
+                writePdfContent(outputStream, form);
+                break;
+            case "docx":
+                writeDocxContent(outputStream, form);
+                break;
+            case "xlsx":
+                writeXlsxContent(outputStream, form);
+                break;
+            case "txt":
+                writeTxtContent(outputStream, form);
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected format: " + format);
+        }
+    }
+
+    public void writeBatch(String format, OutputStream outputStream, Iterable<FormSnapshot> forms, int count) throws IOException {
+        switch (format) {
+            case "pdf":
+                writeBatchPdfContent(outputStream, forms, count);
+                break;
+            case "xlsx":
+                writeBatchXlsxContent(outputStream, forms, count);
+                break;
+            case "csv":
+                writeBatchCsvContent(outputStream, forms, count);
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected format: " + format);
+        }
+    }
+
+    private void step(int done, int total) {
+        if (progress.isCancelled()) throw new CancellationException();
+        progress.onProgress(done, total);
+    }
+
+    private void writePdfContent(OutputStream outputStream, FormSnapshot form) {
+        PdfWriter writer = new PdfWriter(outputStream);
+        PdfDocument pdfDocument = new PdfDocument(writer);
+        pdfDocument.setDefaultPageSize(PageSize.A4);
+        Document document = new Document(pdfDocument);
+        document.setMargins(28.35f, 28.35f, 28.35f, 28.35f);
+
+        Table table = createPdfTable(form);
+        for (int i = 0; i < form.size(); i++) {
+            step(i, form.size() + 1);
+            addPdfRow(table, form, i);
+        }
+
+        step(form.size(), form.size() + 1);
+        document.add(table);
+        document.close();
+        progress.onProgress(1, 1);
+    }
+
+    private Table createPdfTable(FormSnapshot form) {
+        Table table = new Table(UnitValue.createPercentArray(new float[]{1, 2})).useAllAvailableWidth();
+        Cell cell = new Cell(1, 2).add(new Paragraph(form.getLabel()));
+        cell.setBackgroundColor(ColorConstants.LIGHT_GRAY);
+        table.addCell(cell);
+        return table;
+    }
+
+    private void addPdfRow(Table table, FormSnapshot form, int i) {
+        table.addCell(new Cell().add(new Paragraph(form.getField(i))));
+        table.addCell(new Cell().add(new Paragraph(form.getValue(i))));
+    }
+
+    private void writeDocxContent(OutputStream outputStream, FormSnapshot form) throws IOException {
+        XWPFDocument document = new XWPFDocument();
+
+        CTSectPr sectPr = document.getDocument().getBody().addNewSectPr();
+
+        CTPageSz pageSz = sectPr.addNewPgSz();
+        pageSz.setW(BigInteger.valueOf(11906));
+        pageSz.setH(BigInteger.valueOf(16838));
+
+        sectPr.addNewPgMar().setLeft(BigInteger.valueOf(567));
+        sectPr.addNewPgMar().setRight(BigInteger.valueOf(567));
+        sectPr.addNewPgMar().setTop(BigInteger.valueOf(567));
+        sectPr.addNewPgMar().setBottom(BigInteger.valueOf(567));
+
+        XWPFTable table = document.createTable(1, 2);
+
+        CTTblWidth tblWidth = table.getCTTbl().addNewTblPr().addNewTblW();
+        tblWidth.setType(STTblWidth.DXA);
+        tblWidth.setW(BigInteger.valueOf(10772));
+
+        XWPFTableRow headerRow = table.getRow(0);
+
+        XWPFTableCell headerCell = headerRow.getCell(0);
+        setCellText(headerCell, form.getLabel());
+        headerCell.setColor("C0C0C0");
+
+        CTTcPr tcPr = headerCell.getCTTc().addNewTcPr();
+        tcPr.addNewGridSpan().setVal(BigInteger.valueOf(2));
+        headerRow.removeCell(1);
+
+        for (int i = 0; i < form.size(); i++) {
+            step(i, form.size() + 1);
+            XWPFTableRow row = table.createRow();
+            XWPFTableCell cell1 = row.getCell(0);
+            if (cell1 == null) {
+                cell1 = row.createCell();
+            }
+            XWPFTableCell cell2 = row.getCell(1);
+            if (cell2 == null) {
+                cell2 = row.createCell();
+            }
+
+            setCellWidth(cell1, 3590);
+            setCellWidth(cell2, 7182);
+
+            setCellText(cell1, form.getField(i));
+            setCellText(cell2, form.getValue(i));
+        }
+
+        step(form.size(), form.size() + 1);
+        document.write(outputStream);
+        document.close();
+        progress.onProgress(1, 1);
+    }
+
+    private void setCellWidth(XWPFTableCell cell, int width) {
+        CTTcPr tcPr = cell.getCTTc().addNewTcPr();
+        CTTblWidth cellWidth = tcPr.addNewTcW();
+        cellWidth.setType(STTblWidth.DXA);
+        cellWidth.setW(BigInteger.valueOf(width));
+    }
+
+    private void setCellText(XWPFTableCell cell, String text) {
+        XWPFParagraph para = cell.getParagraphs().get(0);
+        para.setIndentationLeft(42);
+        para.setIndentationRight(42);
+        para.setSpacingBefore(68);
+        para.setSpacingAfter(68);
+        para.setWordWrap(true);
+        XWPFRun run = para.createRun();
+        run.setFontFamily("Arial");
+        run.setFontSize(12);
+        run.setText(text);
+    }
+
+    private void writeXlsxContent(OutputStream outputStream, FormSnapshot form) throws IOException {
+        Workbook workbook = new XSSFWorkbook();
+        Sheet sheet = workbook.createSheet(form.getLabel());
+
+        Row headerRow = sheet.createRow(0);
+        org.apache.poi.ss.usermodel.Cell headerCell1 = headerRow.createCell(0);
+        headerCell1.setCellValue(form.getLabel());
+
+        for (int i = 0; i < form.size(); i++) {
+            step(i, form.size() + 1);
+            Row row = sheet.createRow(i + 1);
+            org.apache.poi.ss.usermodel.Cell cell1 = row.createCell(0);
+            cell1.setCellValue(form.getField(i));
+            org.apache.poi.ss.usermodel.Cell cell2 = row.createCell(1);
+            cell2.setCellValue(form.getValue(i));
+        }
+
+        step(form.size(), form.size() + 1);
+        workbook.write(outputStream);
+        workbook.close();
+        progress.onProgress(1, 1);
+    }
+
+    private void writeTxtContent(OutputStream outputStream, FormSnapshot form) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(form.getLabel() + "\n");
+
+        for (int i = 0; i < form.size(); i++) {
+            step(i, form.size());
+            writer.write(form.getField(i) + ": " + form.getValue(i) + "\n");
+        }
+
+        writer.flush();
+        progress.onProgress(1, 1);
+    }
+
+    private void writeBatchPdfContent(OutputStream outputStream, Iterable<FormSnapshot> forms, int count) {
+        PdfWriter writer = new PdfWriter(outputStream);
+        PdfDocument pdfDocument = new PdfDocument(writer);
+        pdfDocument.setDefaultPageSize(PageSize.A4);
+        Document document = new Document(pdfDocument);
+        document.setMargins(28.35f, 28.35f, 28.35f, 28.35f);
+
+        int done = 0;
+        for (FormSnapshot form : forms) {
+            step(done, count);
+            if (done > 0) document.add(new AreaBreak(AreaBreakType.NEXT_PAGE));
+            Table table = createPdfTable(form);
+            for (int i = 0; i < form.size(); i++) addPdfRow(table, form, i);
+            document.add(table);
+            document.flush();
+            done++;
+        }
+
+        document.close();
+        progress.onProgress(1, 1);
+    }
+
+    private void writeBatchXlsxContent(OutputStream outputStream, Iterable<FormSnapshot> forms, int count) throws IOException {
+        LinkedHashMap<String, LinkedHashMap<String, Integer>> columnsByLabel = new LinkedHashMap<>();
+        for (FormSnapshot form : forms) {
+            LinkedHashMap<String, Integer> columns = columnsByLabel.get(form.getLabel());
+            if (columns == null) {
+                columns = new LinkedHashMap<>();
+                columnsByLabel.put(form.getLabel(), columns);
+            }
+            for (int i = 0; i < form.size(); i++) {
+                if (!columns.containsKey(form.getField(i))) columns.put(form.getField(i), columns.size() + 1);
+            }
+        }
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        try {
+            HashMap<String, Sheet> sheets = new HashMap<>();
+            for (Map.Entry<String, LinkedHashMap<String, Integer>> entry : columnsByLabel.entrySet()) {
+                String name = WorkbookUtil.createSafeSheetName(entry.getKey());
+                for (int suffix = 2; workbook.getSheet(name) != null; suffix++) {
+                    name = WorkbookUtil.createSafeSheetName(entry.getKey() + " " + suffix);
+                }
+                Sheet sheet = workbook.createSheet(name);
+                Row headerRow = sheet.createRow(0);
+                headerRow.createCell(0).setCellValue(DATE_HEADER);
+                for (Map.Entry<String, Integer> column : entry.getValue().entrySet()) {
+                    headerRow.createCell(column.getValue()).setCellValue(column.getKey());
+                }
+                sheets.put(entry.getKey(), sheet);
+            }
+
+            int done = 0;
+            for (FormSnapshot form : forms) {
+                step(done++, count + 1);
+                Sheet sheet = sheets.get(form.getLabel());
+                LinkedHashMap<String, Integer> columns = columnsByLabel.get(form.getLabel());
+                if (sheet == null || columns == null) continue;
+                Row row = sheet.createRow(sheet.getLastRowNum() + 1);
+                row.createCell(0).setCellValue(formatDate(form.getCreatedAt()));
+                for (int i = 0; i < form.size(); i++) {
+                    row.createCell(columns.get(form.getField(i))).setCellValue(form.getValue(i));
+                }
+            }
+
+            step(count, count + 1);
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+        progress.onProgress(1, 1);
+    }
+
+    private void writeBatchCsvContent(OutputStream outputStream, Iterable<FormSnapshot> forms, int count) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(LABEL_HEADER, DATE_HEADER, FIELD_HEADER, VALUE_HEADER).build());
+
+        int done = 0;
+        for (FormSnapshot form : forms) {
+            step(done++, count);
+            String date = formatDate(form.getCreatedAt());
+            for (int i = 0; i < form.size(); i++) {
+                printer.printRecord(form.getLabel(), date, form.getField(i), form.getValue(i));
+            }
+        }
+
+        printer.flush();
+        progress.onProgress(1, 1);
+    }
+
+    private static String formatDate(long time) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault()).format(new Date(time));
+    }
+}
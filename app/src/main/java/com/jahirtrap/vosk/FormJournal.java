@@ -0,0 +1,172 @@
+package com.jahirtrap.vosk;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FormJournal {
+    private static final byte ENTRY_BEGIN = 1, ENTRY_VALUE = 2;
+    private static FormJournal instance;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final File file;
+    private ByteBuffer pending = ByteBuffer.allocate(4096), writing = ByteBuffer.allocate(4096);
+    private boolean commitScheduled = false, truncate = false;
+    private FileChannel channel;
+
+    public static class State {
+        private final long recordId;
+        private final String template;
+        private final String[] values;
+
+        private State(long recordId, String template, String[] values) {
+            this.recordId = recordId;
+            this.template = template;
+            this.values = values;
+        }
+
+        public long getRecordId() {
+            return recordId;
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public String getValue(int slot) {
+            return values[slot];
+        }
+    }
+
+    private FormJournal(Context context) {
+        file = new File(context.getApplicationContext().getFilesDir(), "form.journal");
+    }
+
+    public static synchronized FormJournal getInstance(Context context) {
+        if (instance == null) instance = new FormJournal(context);
+        return instance;
+    }
+
+    public State recover() {
+        // Let commits queued by a previous activity land before reading
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.fillInStackTrace();
+        }
+        if (!file.exists() || file.length() == 0) return null;
+        ByteBuffer buffer;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            buffer = ByteBuffer.allocate((int) input.length());
+            input.readFully(buffer.array());
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            return null;
+        }
+
+        long recordId = 0;
+        String template = null;
+        String[] values = null;
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == ENTRY_BEGIN) {
+                    recordId = buffer.getLong();
+                    template = readString(buffer);
+                    values = new String[buffer.getInt()];
+                } else if (type == ENTRY_VALUE && values != null) {
+                    int slot = buffer.getInt();
+                    buffer.getLong();
+                    String value = readString(buffer);
+                    if (slot >= 0 && slot < values.length) values[slot] = value;
+                } else {
+                    break;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            // Torn tail from an interrupted commit, keep what was read
+        }
+        return template == null ? null : new State(recordId, template, values);
+    }
+
+    public synchronized void begin(long recordId, String template, int size) {
+        pending.clear();
+        truncate = true;
+        byte[] bytes = template.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(1 + 8 + 4 + bytes.length + 4);
+        pending.put(ENTRY_BEGIN).putLong(recordId).putInt(bytes.length).put(bytes).putInt(size);
+        scheduleCommit();
+    }
+
+    public synchronized void append(int slot, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(1 + 4 + 8 + 4 + bytes.length);
+        pending.put(ENTRY_VALUE).putInt(slot).putLong(System.currentTimeMillis()).putInt(bytes.length).put(bytes);
+        scheduleCommit();
+    }
+
+    public synchronized void clear() {
+        pending.clear();
+        truncate = true;
+        scheduleCommit();
+    }
+
+    private void ensureCapacity(int length) {
+        if (pending.remaining() >= length) return;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+        pending.flip();
+        buffer.put(pending);
+        pending = buffer;
+    }
+
+    private void scheduleCommit() {
+        if (commitScheduled) return;
+        commitScheduled = true;
+        executor.execute(this::commit);
+    }
+
+    private void commit() {
+        boolean reset;
+        synchronized (this) {
+            ByteBuffer buffer = writing;
+            writing = pending;
+            pending = buffer;
+            pending.clear();
+            reset = truncate;
+            truncate = false;
+            commitScheduled = false;
+        }
+
+        writing.flip();
+        try {
+            if (channel == null) {
+                channel = new RandomAccessFile(file, "rw").getChannel();
+                channel.position(channel.size());
+            }
+            if (reset) channel.truncate(0).position(0);
+            while (writing.hasRemaining()) channel.write(writing);
+            channel.force(false);
+        } catch (IOException e) {
+            e.fillInStackTrace();
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
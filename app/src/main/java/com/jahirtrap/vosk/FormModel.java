@@ -0,0 +1,96 @@
+package com.jahirtrap.vosk;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FormModel {
+    private final String label;
+    private final String[] names;
+    private final FieldIndex index;
+    private final String[] committed, partial;
+    private final WordTimings[] words;
+    private int activeSlot;
+
+    public FormModel(String label, List<String> names) {
+        this(label, names.toArray(new String[0]), null);
+    }
+
+    public FormModel(TemplateRegistry.Template template) {
+        this(template.getLabel(), template.getFields().toArray(new String[0]), template);
+    }
+
+    private FormModel(String label, String[] names, TemplateRegistry.Template template) {
+        this.label = label;
+        this.names = names;
+        this.committed = new String[names.length];
+        this.partial = new String[names.length];
+        this.words = new WordTimings[names.length];
+        String[] keys = new String[names.length];
+        for (int slot = 0; slot < names.length; slot++) {
+            keys[slot] = template != null ? template.getKey(slot) : TextNormalizer.normalize(names[slot]);
+            words[slot] = new WordTimings();
+        }
+        this.index = new FieldIndex(keys);
+        clear();
+        activeSlot = names.length > 0 ? 0 : -1;
+    }
+
+    public static FormModel empty() {
+        return new FormModel("", Collections.emptyList());
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    public int findSlot(CharSequence name) {
+        return index.find(name);
+    }
+
+    public int getActiveSlot() {
+        return activeSlot;
+    }
+
+    public void setActiveSlot(int slot) {
+        if (slot >= -1 && slot < names.length) activeSlot = slot;
+    }
+
+    public String getCommitted(int slot) {
+        return committed[slot];
+    }
+
+    public void setCommitted(int slot, String text) {
+        committed[slot] = text;
+    }
+
+    public String getPartial(int slot) {
+        return partial[slot];
+    }
+
+    public void setPartial(int slot, String text) {
+        partial[slot] = text;
+    }
+
+    public WordTimings getWords(int slot) {
+        return words[slot];
+    }
+
+    public void clear() {
+        Arrays.fill(committed, "");
+        Arrays.fill(partial, "");
+        for (WordTimings timings : words) timings.clear();
+    }
+}
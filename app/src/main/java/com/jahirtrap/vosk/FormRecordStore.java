@@ -0,0 +1,555 @@
+package com.jahirtrap.vosk;
+
+import android.content.Context;
+
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class FormRecordStore implements Iterable<FormSnapshot> {
+    private static final byte ENTRY_RECORD = 1, ENTRY_VALUE = 2, ENTRY_SAVED = 3, ENTRY_DISCARD = 4;
+    private static final int HEADER = -1, SAVED = -2, DISCARD = -3;
+    private static final long COMPACT_MIN_BYTES = 256 * 1024;
+    private static FormRecordStore instance;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final File logFile;
+    private final TreeMap<Long, Record> byDate = new TreeMap<>();
+    private final HashMap<String, ArrayList<Record>> byTemplate = new HashMap<>();
+    private ArrayList<Entry> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+    private long lastId = 0;
+    private FileOutputStream out;
+    private long logLength;
+
+    private FormRecordStore(Context context) {
+        logFile = new File(context.getApplicationContext().getFilesDir(), "records.log");
+        executor.execute(this::load);
+    }
+
+    public static synchronized FormRecordStore getInstance(Context context) {
+        if (instance == null) instance = new FormRecordStore(context);
+        return instance;
+    }
+
+    public synchronized long begin(String label, String[] fields) {
+        long id = Math.max(System.currentTimeMillis(), lastId + 1);
+        Record record = new Record(id, id, label, fields);
+        index(record);
+        enqueue(new Entry(record, HEADER, null));
+        return id;
+    }
+
+    // Before load() finishes the id may not be indexed yet; the header written here is
+    // dropped in flush() if load() finds the record on disk
+    public synchronized long resume(long id, String label, String[] fields) {
+        if (byDate.containsKey(id)) return id;
+        Record record = new Record(id, id, label, fields);
+        index(record);
+        enqueue(new Entry(record, HEADER, null));
+        return id;
+    }
+
+    public synchronized void put(long id, int slot, String value) {
+        Record record = byDate.get(id);
+        if (record == null || slot < 0 || slot >= record.fields.length) return;
+        enqueue(new Entry(record, slot, value));
+    }
+
+    public synchronized long save(FormSnapshot form) {
+        String[] fields = new String[form.size()];
+        for (int i = 0; i < fields.length; i++) fields[i] = form.getField(i);
+        long id = begin(form.getLabel(), fields);
+        for (int i = 0; i < fields.length; i++) {
+            if (!form.getValue(i).isEmpty()) put(id, i, form.getValue(i));
+        }
+        markSaved(id);
+        return id;
+    }
+
+    public synchronized void markSaved(long id) {
+        Record record = byDate.get(id);
+        if (record == null || record.saved) return;
+        record.saved = true;
+        enqueue(new Entry(record, SAVED, null));
+    }
+
+    public synchronized void discard(long id) {
+        Record record = byDate.get(id);
+        if (record == null || record.saved) return;
+        unindex(record);
+        enqueue(new Entry(record, DISCARD, null));
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Record record : byDate.values()) {
+            if (record.saved) size++;
+        }
+        return size;
+    }
+
+    public synchronized List<String> getTemplates() {
+        ArrayList<String> labels = new ArrayList<>();
+        for (ArrayList<Record> records : byTemplate.values()) {
+            ArrayList<Record> saved = savedOnly(records);
+            if (!saved.isEmpty()) labels.add(saved.get(0).label);
+        }
+        Collections.sort(labels);
+        return labels;
+    }
+
+    @WorkerThread
+    @Override
+    public Iterator<FormSnapshot> iterator() {
+        sync();
+        synchronized (this) {
+            return new RecordIterator(savedOnly(byDate.values()));
+        }
+    }
+
+    @WorkerThread
+    public Iterable<FormSnapshot> byTemplate(String label) {
+        sync();
+        synchronized (this) {
+            ArrayList<Record> records = byTemplate.get(label);
+            ArrayList<Record> copy = records == null ? new ArrayList<>() : savedOnly(records);
+            return () -> new RecordIterator(copy);
+        }
+    }
+
+    @WorkerThread
+    public Iterable<FormSnapshot> between(long from, long to) {
+        sync();
+        synchronized (this) {
+            ArrayList<Record> copy = savedOnly(byDate.subMap(from, true, to, true).values());
+            return () -> new RecordIterator(copy);
+        }
+    }
+
+    private void index(Record record) {
+        byDate.put(record.id, record);
+        ArrayList<Record> records = byTemplate.get(record.label);
+        if (records == null) {
+            records = new ArrayList<>();
+            byTemplate.put(record.label, records);
+        }
+        records.add(record);
+        lastId = Math.max(lastId, record.id);
+    }
+
+    private void unindex(Record record) {
+        byDate.remove(record.id);
+        ArrayList<Record> records = byTemplate.get(record.label);
+        if (records == null) return;
+        records.remove(record);
+        if (records.isEmpty()) byTemplate.remove(record.label);
+    }
+
+    private static ArrayList<Record> savedOnly(Iterable<Record> records) {
+        ArrayList<Record> saved = new ArrayList<>();
+        for (Record record : records) {
+            if (record.saved) saved.add(record);
+        }
+        return saved;
+    }
+
+    private void enqueue(Entry entry) {
+        pending.add(entry);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.execute(this::flush);
+        }
+    }
+
+    private void sync() {
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.fillInStackTrace();
+        }
+    }
+
+    private void flush() {
+        ArrayList<Entry> entries;
+        synchronized (this) {
+            entries = coalesce(pending);
+            pending = new ArrayList<>();
+            flushScheduled = false;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 * entries.size());
+        DataOutputStream data = new DataOutputStream(buffer);
+        long[] offsets = new long[entries.size()];
+        int[] lengths = new int[entries.size()];
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                Record record = entry.record;
+                offsets[i] = -1;
+                if (entry.slot == HEADER) {
+                    // Records found on disk by load() already have a header
+                    if (record.persisted) continue;
+                    writeHeader(data, record);
+                } else if (entry.slot == SAVED || entry.slot == DISCARD) {
+                    data.writeByte(entry.slot == SAVED ? ENTRY_SAVED : ENTRY_DISCARD);
+                    data.writeLong(record.id);
+                } else {
+                    byte[] bytes = entry.value.getBytes(StandardCharsets.UTF_8);
+                    if (isWritten(record, entry.slot, bytes)) continue;
+                    data.writeByte(ENTRY_VALUE);
+                    data.writeLong(record.id);
+                    data.writeInt(entry.slot);
+                    offsets[i] = logLength + data.size();
+                    lengths[i] = bytes.length;
+                    data.writeInt(bytes.length);
+                    data.write(bytes);
+                }
+            }
+            if (buffer.size() == 0) return;
+
+            if (out == null) out = new FileOutputStream(logFile, true);
+            buffer.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // Nothing is marked written yet; drop the torn tail and retry the batch with the next flush
+            e.fillInStackTrace();
+            closeLog();
+            truncate(logLength);
+            synchronized (this) {
+                entries.addAll(pending);
+                pending = entries;
+            }
+            return;
+        }
+        logLength += buffer.size();
+
+        synchronized (this) {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                if (entry.slot == HEADER) {
+                    entry.record.persisted = true;
+                } else if (offsets[i] != -1) {
+                    entry.record.offsets[entry.slot] = offsets[i];
+                    entry.record.lengths[entry.slot] = lengths[i];
+                }
+            }
+        }
+        if (shouldCompact()) compact();
+    }
+
+    // Only the last value queued for a slot reaches the log
+    private static ArrayList<Entry> coalesce(ArrayList<Entry> entries) {
+        HashMap<Record, BitSet> seen = new HashMap<>();
+        ArrayList<Entry> kept = new ArrayList<>(entries.size());
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.slot >= 0) {
+                BitSet slots = seen.get(entry.record);
+                if (slots == null) seen.put(entry.record, slots = new BitSet());
+                if (slots.get(entry.slot)) continue;
+                slots.set(entry.slot);
+            }
+            kept.add(entry);
+        }
+        Collections.reverse(kept);
+        return kept;
+    }
+
+    private boolean isWritten(Record record, int slot, byte[] bytes) throws IOException {
+        long offset;
+        synchronized (this) {
+            if (record.offsets[slot] == -1 || record.lengths[slot] != bytes.length) return false;
+            offset = record.offsets[slot];
+        }
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            file.seek(offset + 4);
+            byte[] written = new byte[bytes.length];
+            file.readFully(written);
+            return Arrays.equals(written, bytes);
+        }
+    }
+
+    private synchronized boolean shouldCompact() {
+        if (logLength < COMPACT_MIN_BYTES) return false;
+        long live = 0;
+        for (Record record : byDate.values()) {
+            if (!record.persisted) continue;
+            live += headerSize(record) + (record.saved ? 1 + 8 : 0);
+            for (int slot = 0; slot < record.fields.length; slot++) {
+                if (record.offsets[slot] != -1) live += 1 + 8 + 4 + 4 + record.lengths[slot];
+            }
+        }
+        return logLength > live * 2;
+    }
+
+    // Rewrites the log with the latest value of every live record, dropping superseded values and discarded records
+    private void compact() {
+        ArrayList<Record> records = new ArrayList<>();
+        ArrayList<long[]> sources = new ArrayList<>();
+        synchronized (this) {
+            for (Record record : byDate.values()) {
+                if (!record.persisted) continue;
+                records.add(record);
+                sources.add(record.offsets.clone());
+            }
+        }
+
+        File temp = new File(logFile.getPath() + ".tmp");
+        long[][] offsets = new long[records.size()][];
+        long length;
+        try (RandomAccessFile source = new RandomAccessFile(logFile, "r");
+             FileOutputStream file = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            for (int r = 0; r < records.size(); r++) {
+                Record record = records.get(r);
+                writeHeader(data, record);
+                offsets[r] = new long[record.fields.length];
+                Arrays.fill(offsets[r], -1);
+                for (int slot = 0; slot < record.fields.length; slot++) {
+                    if (sources.get(r)[slot] == -1) continue;
+                    source.seek(sources.get(r)[slot]);
+                    byte[] bytes = new byte[source.readInt()];
+                    source.readFully(bytes);
+                    data.writeByte(ENTRY_VALUE);
+                    data.writeLong(record.id);
+                    data.writeInt(slot);
+                    offsets[r][slot] = data.size();
+                    data.writeInt(bytes.length);
+                    data.write(bytes);
+                }
+                if (record.saved) {
+                    data.writeByte(ENTRY_SAVED);
+                    data.writeLong(record.id);
+                }
+            }
+            data.flush();
+            file.getFD().sync();
+            length = data.size();
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            temp.delete();
+            return;
+        }
+
+        closeLog();
+        synchronized (this) {
+            if (!temp.renameTo(logFile)) {
+                temp.delete();
+                return;
+            }
+            for (int r = 0; r < records.size(); r++) {
+                System.arraycopy(offsets[r], 0, records.get(r).offsets, 0, offsets[r].length);
+            }
+            logLength = length;
+        }
+    }
+
+    private void closeLog() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            e.fillInStackTrace();
+        }
+        out = null;
+    }
+
+    private void truncate(long length) {
+        if (length >= logFile.length()) return;
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(length);
+        } catch (IOException e) {
+            e.fillInStackTrace();
+        }
+    }
+
+    private void load() {
+        if (!logFile.exists()) return;
+        long valid = 0;
+        TreeMap<Long, Record> records = new TreeMap<>();
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 64 * 1024))) {
+            long position = 0;
+            while (true) {
+                byte type = data.readByte();
+                long id = data.readLong();
+                if (type == ENTRY_RECORD) {
+                    long createdAt = data.readLong();
+                    String label = readString(data);
+                    String[] fields = new String[data.readInt()];
+                    for (int i = 0; i < fields.length; i++) fields[i] = readString(data);
+                    Record record = new Record(id, createdAt, label, fields);
+                    records.put(id, record);
+                    position += headerSize(record);
+                } else if (type == ENTRY_VALUE) {
+                    int slot = data.readInt();
+                    int length = data.readInt();
+                    if (data.skipBytes(length) < length) throw new EOFException();
+                    Record record = records.get(id);
+                    if (record != null && slot >= 0 && slot < record.offsets.length) {
+                        record.offsets[slot] = position + 1 + 8 + 4;
+                        record.lengths[slot] = length;
+                    }
+                    position += 1 + 8 + 4 + 4 + length;
+                } else if (type == ENTRY_SAVED) {
+                    Record record = records.get(id);
+                    if (record != null) record.saved = true;
+                    position += 1 + 8;
+                } else if (type == ENTRY_DISCARD) {
+                    records.remove(id);
+                    position += 1 + 8;
+                } else {
+                    break;
+                }
+                valid = position;
+            }
+        } catch (EOFException e) {
+            // Torn tail from an interrupted write, truncated below
+        } catch (IOException e) {
+            e.fillInStackTrace();
+        }
+
+        synchronized (this) {
+            for (Record record : records.values()) {
+                record.persisted = true;
+                Record resumed = byDate.get(record.id);
+                if (resumed == null) {
+                    index(record);
+                    continue;
+                }
+                resumed.persisted = true;
+                resumed.saved |= record.saved;
+                for (int slot = 0; slot < Math.min(resumed.offsets.length, record.offsets.length); slot++) {
+                    if (resumed.offsets[slot] != -1) continue;
+                    resumed.offsets[slot] = record.offsets[slot];
+                    resumed.lengths[slot] = record.lengths[slot];
+                }
+            }
+        }
+
+        logLength = valid;
+        truncate(valid);
+        if (shouldCompact()) compact();
+    }
+
+    private static void writeHeader(DataOutputStream data, Record record) throws IOException {
+        data.writeByte(ENTRY_RECORD);
+        data.writeLong(record.id);
+        data.writeLong(record.createdAt);
+        writeString(data, record.label);
+        data.writeInt(record.fields.length);
+        for (String field : record.fields) writeString(data, field);
+    }
+
+    private static long headerSize(Record record) {
+        long size = 1 + 8 + 8 + 4 + utfLength(record.label) + 4;
+        for (String field : record.fields) size += 4 + utfLength(field);
+        return size;
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInput data) throws IOException {
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int utfLength(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static class Record {
+        private final long id, createdAt;
+        private final String label;
+        private final String[] fields;
+        private final long[] offsets;
+        private final int[] lengths;
+        private boolean persisted = false, saved = false;
+
+        private Record(long id, long createdAt, String label, String[] fields) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.label = label;
+            this.fields = fields;
+            this.offsets = new long[fields.length];
+            Arrays.fill(offsets, -1);
+            this.lengths = new int[fields.length];
+        }
+    }
+
+    private static class Entry {
+        private final Record record;
+        private final int slot;
+        private final String value;
+
+        private Entry(Record record, int slot, String value) {
+            this.record = record;
+            this.slot = slot;
+            this.value = value;
+        }
+    }
+
+    private class RecordIterator implements Iterator<FormSnapshot> {
+        private final List<Record> records;
+        private int index = 0;
+
+        private RecordIterator(List<Record> records) {
+            this.records = records;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < records.size();
+        }
+
+        @Override
+        public FormSnapshot next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Record record = records.get(index++);
+            String[] values = new String[record.fields.length];
+            Arrays.fill(values, "");
+            // Compaction swaps the log and the offsets together under the store lock
+            synchronized (FormRecordStore.this) {
+                try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+                    for (int slot = 0; slot < values.length; slot++) {
+                        if (record.offsets[slot] == -1) continue;
+                        file.seek(record.offsets[slot]);
+                        values[slot] = readString(file);
+                    }
+                } catch (IOException e) {
+                    e.fillInStackTrace();
+                }
+            }
+            return new FormSnapshot(record.label, record.fields, values, record.createdAt);
+        }
+    }
+}
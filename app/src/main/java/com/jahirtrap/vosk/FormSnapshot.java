@@ -0,0 +1,43 @@
+package com.jahirtrap.vosk;
+
+public class FormSnapshot {
+    private final String label;
+    private final String[] fields, values;
+    private final long createdAt;
+
+    public FormSnapshot(String label, String[] fields, String[] values) {
+        this(label, fields, values, System.currentTimeMillis());
+    }
+
+    public FormSnapshot(String label, String[] fields, String[] values, long createdAt) {
+        this.label = label;
+        this.fields = fields;
+        this.values = values;
+        this.createdAt = createdAt;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    public String getField(int index) {
+        return fields[index];
+    }
+
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    public static String capitalizeFirstLetter(String input) {
+        if (input == null || input.isEmpty()) return input;
+        return input.substring(0, 1).toUpperCase() + input.substring(1);
+    }
+}
@@ -0,0 +1,29 @@
+package com.jahirtrap.vosk;
+
+public class LevelMeter implements AudioCaptureEngine.Consumer {
+    private static final int WINDOW_SIZE = AudioCaptureEngine.SAMPLE_RATE / 25;
+    private final OnLevelListener listener;
+
+    public interface OnLevelListener {
+        void onLevel(float amplitude);
+    }
+
+    public LevelMeter(OnLevelListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onAudio(short[] buffer, int read) {
+        for (int offset = 0; offset < read; offset += WINDOW_SIZE) {
+            listener.onLevel(calculateAmplitude(buffer, offset, Math.min(WINDOW_SIZE, read - offset)));
+        }
+    }
+
+    public static float calculateAmplitude(short[] buffer, int offset, int length) {
+        float sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += Math.abs(buffer[i]);
+        }
+        return sum / length;
+    }
+}
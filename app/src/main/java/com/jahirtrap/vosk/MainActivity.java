@@ -3,28 +3,23 @@ package com.jahirtrap.vosk;
 import android.Manifest;
 import android.content.ClipData;
 import android.content.ClipboardManager;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Environment;
-import android.provider.MediaStore;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
-import android.widget.EditText;
-import android.widget.LinearLayout;
 import android.widget.ProgressBar;
-import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -36,88 +31,68 @@ import androidx.appcompat.app.AppCompatDelegate;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import com.itextpdf.kernel.colors.ColorConstants;
-import com.itextpdf.kernel.geom.PageSize;
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Cell;
-import com.itextpdf.layout.element.Paragraph;
-import com.itextpdf.layout.element.Table;
-import com.itextpdf.layout.property.UnitValue;
-
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
-import org.apache.poi.xwpf.usermodel.XWPFTableRow;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTPageSz;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSectPr;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTblWidth;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTcPr;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.STTblWidth;
 import org.vosk.LibVosk;
 import org.vosk.LogLevel;
 import org.vosk.Model;
 import org.vosk.Recognizer;
 import org.vosk.android.RecognitionListener;
-import org.vosk.android.SpeechService;
 import org.vosk.android.SpeechStreamService;
-import org.vosk.android.StorageService;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.text.Normalizer;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.ArrayDeque;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.StringTokenizer;
-import java.util.stream.Collectors;
-
-public class MainActivity extends AppCompatActivity implements RecognitionListener {
-    private static final int STATE_START = 0, STATE_READY = 1, STATE_DONE = 2, STATE_MIC = 3;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+public class MainActivity extends AppCompatActivity implements RecognizerStage.Listener {
+    private static final int STATE_START = 0, STATE_READY = 1, STATE_DONE = 2, STATE_MIC = 3, STATE_FILE = 4;
     private static final int PERMISSIONS_REQUEST_RECORD_AUDIO = 1;
-    private final HashMap<String, EditText> editTextMap = new HashMap<>();
-    private ArrayList<String> resultP = new ArrayList<>(), result = new ArrayList<>();
+    private static final String TAG = "MainActivity";
+    // WAV only; headerless .pcm/.raw files usually come through as octet-stream
+    private static final String[] AUDIO_MIME_TYPES = {"audio/wav", "audio/x-wav", "audio/wave", "audio/vnd.wave", "application/octet-stream"};
+    private FormModel form = FormModel.empty();
+    private final FormAdapter formAdapter = new FormAdapter();
     private Model model;
+    private ModelManager modelManager;
+    private boolean modelRequested = false;
     private ProgressBar progressBar;
     private Toast toast;
     private TextToSpeechManager tts;
-    private SpeechService speechService;
+    private final AudioCaptureEngine captureEngine = new AudioCaptureEngine();
+    private ExportEngine exportEngine;
+    private FormRecordStore recordStore;
+    private FormJournal journal;
+    private RecognizerPool recognizerPool;
+    private RecognizerStage recognizerStage, commandStage;
+    private BufferedConsumer recognizerBuffer, commandBuffer;
+    private VoiceGate voiceGate;
+    private LevelMeter levelMeter;
+    private AudioArchiver audioArchiver;
+    private UiDispatcher uiDispatcher;
     private SpeechStreamService speechStreamService;
-    private LinearLayout formContainer;
+    private Recognizer fileRecognizer;
+    private int session = 0;
+    private boolean listening = false;
+    private volatile boolean destroyed = false;
+    private InputStream fileStream;
+    private final ArrayDeque<Uri> pendingFiles = new ArrayDeque<>();
+    private TranscriptionQueue transcriptionQueue;
     private AudioVisualizerView visualizer;
-    private boolean isPaused = false, isRecording = false;
-    private AudioRecord audioRecord;
-    private Thread recordingThread;
+    private boolean isPaused = false;
     private SharedPreferences preferences;
     private SharedPreferences.OnSharedPreferenceChangeListener preferenceListener;
-    private EditText currentEditText;
-    private String lineCommand;
-    private String format;
-    private boolean narrator;
+    private final HypothesisProcessor partialProcessor = new HypothesisProcessor("partial", true), resultProcessor = new HypothesisProcessor("text", false);
+    private final HypothesisProcessor commandPartialProcessor = new HypothesisProcessor("partial", true), commandResultProcessor = new HypothesisProcessor("text", false);
+    private final SpanishNumberParser numberParser = new SpanishNumberParser();
+    private String lineCommand, partialLine;
+    private String format, templateName;
+    private boolean narrator, commandMode, exportAll;
+    private long recordId = 0, fileOrigin = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -126,7 +101,9 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
 
         // Setup layout
         progressBar = findViewById(R.id.progress_bar);
-        formContainer = findViewById(R.id.form_container);
+        RecyclerView formList = findViewById(R.id.form_list);
+        formList.setLayoutManager(new LinearLayoutManager(this));
+        formList.setAdapter(formAdapter);
         visualizer = findViewById(R.id.visualizer);
         View visualizer_container = findViewById(R.id.visualizer_container);
         setUiState(STATE_START);
@@ -135,14 +112,37 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
         preferences = PreferenceManager.getDefaultSharedPreferences(this);
         setAppTheme(preferences.getString("theme_preference", "system"));
         visualizer_container.setVisibility(preferences.getBoolean("visualizer_switch", true) ? View.VISIBLE : View.GONE);
+        uiDispatcher = new UiDispatcher(new UiDispatcher.Target() {
+            @Override
+            public void onLevels(float[] amplitudes, int count) {
+                visualizer.addAmplitudes(amplitudes, count);
+            }
+
+            @Override
+            public void onText(int slot, String text) {
+                formAdapter.setText(slot, text);
+            }
+
+            @Override
+            public void onFocus() {
+                focusText();
+            }
+        });
+        levelMeter = new LevelMeter(uiDispatcher::postLevel);
+        if (preferences.getBoolean("visualizer_switch", true)) captureEngine.addConsumer(levelMeter);
+        audioArchiver = new AudioArchiver(getExternalFilesDir("audio"));
+        if (preferences.getBoolean("archive_switch", false)) captureEngine.addConsumer(audioArchiver);
         narrator = preferences.getBoolean("narrator_switch", false);
         lineCommand = preferences.getString("line_command_preference", "línea");
+        commandMode = preferences.getBoolean("command_switch", true);
+        setLineCommand(lineCommand);
 
         // Click listeners
         findViewById(R.id.btn_record).setOnClickListener(view -> recognizeMicrophone());
         findViewById(R.id.btn_pause).setOnClickListener(view -> togglePause());
 
         LibVosk.setLogLevel(LogLevel.INFO);
+        modelManager = ModelManager.getInstance(this);
 
         if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, PERMISSIONS_REQUEST_RECORD_AUDIO);
@@ -150,8 +150,17 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
             initModel();
         }
 
-        // Load default template
-        generateForm("Default.json");
+        exportEngine = new ExportEngine(this);
+        recordStore = FormRecordStore.getInstance(this);
+        journal = FormJournal.getInstance(this);
+
+        // Load default template, or the form left open by the last session
+        FormJournal.State state = journal.recover();
+        if (state != null) {
+            restoreForm(state);
+        } else {
+            generateForm("Default");
+        }
 
         // Narrator
         tts = new TextToSpeechManager(this);
@@ -165,13 +174,12 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
                     break;
                 case "visualizer_switch":
                     if (visualizer != null) {
-                        if (speechService != null) {
-                            setUiState(STATE_DONE);
-                            speechService.stop();
-                            speechService = null;
-                        }
+                        if (listening) stopListening();
                         visualizer.clear();
-                        visualizer_container.setVisibility(sharedPrefs.getBoolean(key, true) ? View.VISIBLE : View.GONE);
+                        boolean visualizerEnabled = sharedPrefs.getBoolean(key, true);
+                        if (visualizerEnabled) captureEngine.addConsumer(levelMeter);
+                        else captureEngine.removeConsumer(levelMeter);
+                        visualizer_container.setVisibility(visualizerEnabled ? View.VISIBLE : View.GONE);
                     }
                     break;
                 case "narrator_switch":
@@ -180,19 +188,53 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
                     else tts.stop();
                     break;
                 case "line_command_preference":
-                    lineCommand = sharedPrefs.getString(key, "línea");
+                    setLineCommand(sharedPrefs.getString(key, "línea"));
+                    updateCommandGrammar();
+                    break;
+                case "command_switch":
+                    if (listening) stopListening();
+                    commandMode = sharedPrefs.getBoolean(key, true);
+                    updateCommandGrammar();
+                    break;
+                case "archive_switch":
+                    if (listening) stopListening();
+                    if (sharedPrefs.getBoolean(key, false)) captureEngine.addConsumer(audioArchiver);
+                    else captureEngine.removeConsumer(audioArchiver);
                     break;
             }
         };
         preferences.registerOnSharedPreferenceChangeListener(preferenceListener);
     }
 
+    private final ModelManager.Callback modelCallback = new ModelManager.Callback() {
+        @Override
+        public void onReady(Model model) {
+            MainActivity.this.model = model;
+            recognizerPool = new RecognizerPool(model, AudioCaptureEngine.SAMPLE_RATE);
+            recognizerPool.warmUp();
+            updateCommandGrammar();
+            setUiState(STATE_READY);
+            if (!pendingFiles.isEmpty()) transcribeNextFile();
+        }
+
+        @Override
+        public void onError(IOException e) {
+            setErrorState(R.string.failed + ": " + e.getMessage());
+        }
+    };
+
     private void initModel() {
-        StorageService.unpack(this, "model-es-es", "model",
-                (model) -> {
-                    this.model = model;
-                    setUiState(STATE_READY);
-                }, (exception) -> setErrorState(R.string.failed + ": " + exception.getMessage()));
+        if (modelRequested) return;
+        modelRequested = true;
+        modelManager.acquire("model-es-es", "model", modelCallback);
+    }
+
+    private void setLineCommand(String lineCommand) {
+        this.lineCommand = lineCommand;
+        partialProcessor.setLineCommand(lineCommand);
+        resultProcessor.setLineCommand(lineCommand);
+        commandPartialProcessor.setLineCommand(lineCommand);
+        commandResultProcessor.setLineCommand(lineCommand);
     }
 
     private void setAppTheme(String themePreference) {
@@ -238,18 +280,22 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
                 return true;
             case 104:
                 format = "pdf";
+                exportAll = false;
                 exportTo(format);
                 return true;
             case 105:
                 format = "docx";
+                exportAll = false;
                 exportTo(format);
                 return true;
             case 106:
                 format = "xlsx";
+                exportAll = false;
                 exportTo(format);
                 return true;
             case 107:
                 format = "txt";
+                exportAll = false;
                 exportTo(format);
                 return true;
             case 108:
@@ -258,6 +304,31 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
             case 109:
                 startActivity(new Intent(this, AboutActivity.class));
                 return true;
+            case 110:
+                saveRecord();
+                showToast((String) getResources().getText(R.string.form_saved));
+                return true;
+            case 112:
+                format = "pdf";
+                exportAll = true;
+                exportTo(format);
+                return true;
+            case 113:
+                format = "xlsx";
+                exportAll = true;
+                exportTo(format);
+                return true;
+            case 114:
+                format = "csv";
+                exportAll = true;
+                exportTo(format);
+                return true;
+            case 115:
+                openAudioLauncher.launch(AUDIO_MIME_TYPES);
+                return true;
+            case 116:
+                openFolderLauncher.launch(null);
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -275,6 +346,18 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
         }
     }
 
+    private final ActivityResultLauncher<String[]> openAudioLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenMultipleDocuments(), uris -> {
+                if (uris == null || uris.isEmpty()) return;
+                pendingFiles.addAll(uris);
+                if (speechStreamService == null && recognizerPool != null) transcribeNextFile();
+            });
+
+    private final ActivityResultLauncher<Uri> openFolderLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocumentTree(), uri -> {
+                if (uri != null) transcribeFolder(uri);
+            });
+
     private final ActivityResultLauncher<String> requestPermissionLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
                 if (isGranted) {
@@ -292,362 +375,120 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
     }
 
     private void exportData(String format) {
-        String label = capitalizeFirstLetter(((TextView) formContainer.getChildAt(0)).getText().toString().trim());
-        switch (format) {
-            case "pdf":
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    createPdfForAndroid10AndAbove(label);
-                } else {
-                    createPdfForBelowAndroid10(label);
-                }
-                break;
-            case "docx":
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    createDocxForAndroid10AndAbove(label);
-                } else {
-                    createDocxForBelowAndroid10(label);
-                }
-                break;
-            case "xlsx":
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    createXlsxForAndroid10AndAbove(label);
-                } else {
-                    createXlsxForBelowAndroid10(label);
-                }
-                break;
-            case "txt":
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    createTxtForAndroid10AndAbove(label);
-                } else {
-                    createTxtForBelowAndroid10(label);
-                }
-                break;
-        }
-    }
-
-    private void createPdfForAndroid10AndAbove(String label) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, label + ".pdf");
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "application/pdf");
-        contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, "Documents/");
-
-        OutputStream outputStream;
-        try {
-            Uri uri = getContentResolver().insert(MediaStore.Files.getContentUri("external"), contentValues);
-            if (uri != null) {
-                outputStream = getContentResolver().openOutputStream(uri);
-                if (outputStream != null) {
-                    writePdfContent(outputStream, label);
-                    outputStream.close();
-                    showToast((String) this.getResources().getText(R.string.export_success));
-                }
-            } else {
-                showToast((String) this.getResources().getText(R.string.export_error));
+        ProgressBar exportProgress = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+        exportProgress.setMax(100);
+        exportProgress.setPadding(48, 32, 48, 0);
+
+        ExportEngine.Job[] job = new ExportEngine.Job[1];
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.export_progress)
+                .setView(exportProgress)
+                .setCancelable(false)
+                .setNegativeButton(R.string.cancel, (d, which) -> job[0].cancel())
+                .show();
+
+        ExportEngine.Listener listener = new ExportEngine.Listener() {
+            @Override
+            public void onProgress(int percent) {
+                if (isDestroyed()) return;
+                exportProgress.setProgress(percent);
             }
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
-    }
 
-    private void createPdfForBelowAndroid10(String label) {
-        File pdfDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-        if (!pdfDir.exists()) return;
-
-        File pdfFile = new File(pdfDir, label + ".pdf");
-        try {
-            OutputStream outputStream = Files.newOutputStream(pdfFile.toPath());
-            writePdfContent(outputStream, label);
-            outputStream.close();
-            showToast((String) this.getResources().getText(R.string.export_success));
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
-    }
-
-    private void writePdfContent(OutputStream outputStream, String label) {
-        PdfWriter writer = new PdfWriter(outputStream);
-        PdfDocument pdfDocument = new PdfDocument(writer);
-        pdfDocument.setDefaultPageSize(PageSize.A4);
-        Document document = new Document(pdfDocument);
-        document.setMargins(28.35f, 28.35f, 28.35f, 28.35f);
-
-        Table table = new Table(UnitValue.createPercentArray(new float[]{1, 2})).useAllAvailableWidth();
-        Cell cell = new Cell(1, 2).add(new Paragraph(label));
-        cell.setBackgroundColor(ColorConstants.LIGHT_GRAY);
-        table.addCell(cell);
-
-        for (int i = 1; i < formContainer.getChildCount(); i++) {
-            View child = formContainer.getChildAt(i);
-            if (child instanceof EditText) {
-                String field = capitalizeFirstLetter(((EditText) child).getHint().toString());
-                String value = capitalizeFirstLetter(((EditText) child).getText().toString().trim());
-                table.addCell(new Cell().add(new Paragraph(field)));
-                table.addCell(new Cell().add(new Paragraph(value)));
+            @Override
+            public void onComplete(String format, long elapsedMs) {
+                if (isDestroyed()) return;
+                dialog.dismiss();
+                showToast((String) getResources().getText(R.string.export_success));
             }
-        }
-
-        document.add(table);
-        document.close();
-    }
-
-    private void createDocxForAndroid10AndAbove(String label) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, label + ".docx");
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
-        contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, "Documents/");
 
-        try {
-            Uri uri = getContentResolver().insert(MediaStore.Files.getContentUri("external"), contentValues);
-            if (uri != null) {
-                try (OutputStream outputStream = getContentResolver().openOutputStream(uri)) {
-                    if (outputStream != null) {
-                        writeDocxContent(outputStream, label);
-                        showToast((String) this.getResources().getText(R.string.export_success));
-                    }
-                }
-            } else {
-                showToast((String) this.getResources().getText(R.string.export_error));
+            @Override
+            public void onCancelled() {
+                if (isDestroyed()) return;
+                dialog.dismiss();
+                showToast((String) getResources().getText(R.string.export_cancelled));
             }
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
-    }
 
-    private void createDocxForBelowAndroid10(String label) {
-        File docxDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-        if (!docxDir.exists()) return;
-
-        File docxFile = new File(docxDir, label + ".docx");
-        try (FileOutputStream outputStream = new FileOutputStream(docxFile)) {
-            writeDocxContent(outputStream, label);
-            showToast((String) this.getResources().getText(R.string.export_success));
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
-    }
-
-    public void writeDocxContent(OutputStream outputStream, String label) {
-        XWPFDocument document = new XWPFDocument();
-
-        CTSectPr sectPr = document.getDocument().getBody().addNewSectPr();
-
-        CTPageSz pageSz = sectPr.addNewPgSz();
-        pageSz.setW(BigInteger.valueOf(11906));
-        pageSz.setH(BigInteger.valueOf(16838));
-
-        sectPr.addNewPgMar().setLeft(BigInteger.valueOf(567));
-        sectPr.addNewPgMar().setRight(BigInteger.valueOf(567));
-        sectPr.addNewPgMar().setTop(BigInteger.valueOf(567));
-        sectPr.addNewPgMar().setBottom(BigInteger.valueOf(567));
-
-        XWPFTable table = document.createTable(1, 2);
-
-        CTTblWidth tblWidth = table.getCTTbl().addNewTblPr().addNewTblW();
-        tblWidth.setType(STTblWidth.DXA);
-        tblWidth.setW(BigInteger.valueOf(10772));
-
-        XWPFTableRow headerRow = table.getRow(0);
-
-        XWPFTableCell headerCell = headerRow.getCell(0);
-        setCellText(headerCell, label);
-        headerCell.setColor("C0C0C0");
-
-        CTTcPr tcPr = headerCell.getCTTc().addNewTcPr();
-        tcPr.addNewGridSpan().setVal(BigInteger.valueOf(2));
-        headerRow.removeCell(1);
-
-        for (int i = 1; i < formContainer.getChildCount(); i++) {
-            View child = formContainer.getChildAt(i);
-            if (child instanceof EditText) {
-                String field = capitalizeFirstLetter(((EditText) child).getHint().toString());
-                String value = capitalizeFirstLetter(((EditText) child).getText().toString().trim());
-                XWPFTableRow row = table.createRow();
-                XWPFTableCell cell1 = row.getCell(0);
-                if (cell1 == null) {
-                    cell1 = row.createCell();
-                }
-                XWPFTableCell cell2 = row.getCell(1);
-                if (cell2 == null) {
-                    cell2 = row.createCell();
-                }
-
-                setCellWidth(cell1, 3590);
-                setCellWidth(cell2, 7182);
-
-                setCellText(cell1, field);
-                setCellText(cell2, value);
+            @Override
+            public void onError(Exception e) {
+                e.fillInStackTrace();
+                if (isDestroyed()) return;
+                dialog.dismiss();
+                showToast((String) getResources().getText(R.string.export_error));
             }
-        }
+        };
 
-        try {
-            document.write(outputStream);
-            outputStream.close();
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
+        if (exportAll) {
+            job[0] = exportEngine.export(format, "Formularios", (outputStream, progress) ->
+                    new FormExporter(progress).writeBatch(format, outputStream, recordStore, recordStore.size()), listener);
+        } else {
+            job[0] = exportEngine.export(format, snapshotForm(), listener);
         }
     }
 
-    private void setCellWidth(XWPFTableCell cell, int width) {
-        CTTcPr tcPr = cell.getCTTc().addNewTcPr();
-        CTTblWidth cellWidth = tcPr.addNewTcW();
-        cellWidth.setType(STTblWidth.DXA);
-        cellWidth.setW(BigInteger.valueOf(width));
-    }
-
-    private void setCellText(XWPFTableCell cell, String text) {
-        XWPFParagraph para = cell.getParagraphs().get(0);
-        para.setIndentationLeft(42);
-        para.setIndentationRight(42);
-        para.setSpacingBefore(68);
-        para.setSpacingAfter(68);
-        para.setWordWrap(true);
-        XWPFRun run = para.createRun();
-        run.setFontFamily("Arial");
-        run.setFontSize(12);
-        run.setText(text);
-    }
-
-    private void createXlsxForAndroid10AndAbove(String label) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, label + ".xlsx");
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, "Documents/");
-
-        try {
-            Uri uri = getContentResolver().insert(MediaStore.Files.getContentUri("external"), contentValues);
-            if (uri != null) {
-                try (OutputStream outputStream = getContentResolver().openOutputStream(uri)) {
-                    if (outputStream != null) {
-                        writeXlsxContent(outputStream, label);
-                        showToast((String) this.getResources().getText(R.string.export_success));
-                    }
-                }
-            } else {
-                showToast((String) this.getResources().getText(R.string.export_error));
-            }
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
+    private FormSnapshot snapshotForm() {
+        String[] fields = new String[form.size()];
+        String[] values = new String[form.size()];
+        for (int slot = 0; slot < form.size(); slot++) {
+            fields[slot] = FormSnapshot.capitalizeFirstLetter(form.getName(slot));
+            values[slot] = FormSnapshot.capitalizeFirstLetter(form.getPartial(slot).trim());
         }
+        return new FormSnapshot(FormSnapshot.capitalizeFirstLetter(form.getLabel().trim()), fields, values);
     }
 
-    private void createXlsxForBelowAndroid10(String label) {
-        File xlsxDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-        if (!xlsxDir.exists()) return;
-
-        File xlsxFile = new File(xlsxDir, label + ".xlsx");
-        try (FileOutputStream outputStream = new FileOutputStream(xlsxFile)) {
-            writeXlsxContent(outputStream, label);
-            showToast((String) this.getResources().getText(R.string.export_success));
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
+    private void startRecord(long id) {
+        String label = FormSnapshot.capitalizeFirstLetter(form.getLabel().trim());
+        String[] fields = new String[form.size()];
+        for (int i = 0; i < fields.length; i++)
+            fields[i] = FormSnapshot.capitalizeFirstLetter(form.getName(i));
+        recordId = id == 0 ? recordStore.begin(label, fields) : recordStore.resume(id, label, fields);
+        journal.begin(recordId, templateName, form.size());
     }
 
-    private void writeXlsxContent(OutputStream outputStream, String label) throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet(label);
-
-        Row headerRow = sheet.createRow(0);
-        org.apache.poi.ss.usermodel.Cell headerCell1 = headerRow.createCell(0);
-        headerCell1.setCellValue(label);
-
-        int rowCount = 1;
-        for (int i = 1; i < formContainer.getChildCount(); i++) {
-            View child = formContainer.getChildAt(i);
-            if (child instanceof EditText) {
-                String field = capitalizeFirstLetter(((EditText) child).getHint().toString());
-                String value = capitalizeFirstLetter(((EditText) child).getText().toString().trim());
-
-                Row row = sheet.createRow(rowCount++);
-                org.apache.poi.ss.usermodel.Cell cell1 = row.createCell(0);
-                cell1.setCellValue(field);
-                org.apache.poi.ss.usermodel.Cell cell2 = row.createCell(1);
-                cell2.setCellValue(value);
-            }
-        }
-
-        workbook.write(outputStream);
-        workbook.close();
+    private void persistField(int slot) {
+        if (recordId == 0) startRecord(0);
+        String value = form.getCommitted(slot).trim();
+        recordStore.put(recordId, slot, FormSnapshot.capitalizeFirstLetter(value));
+        journal.append(slot, value);
     }
 
-    private void createTxtForAndroid10AndAbove(String label) {
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(MediaStore.MediaColumns.DISPLAY_NAME, label + ".txt");
-        contentValues.put(MediaStore.MediaColumns.MIME_TYPE, "text/plain");
-        contentValues.put(MediaStore.MediaColumns.RELATIVE_PATH, "Documents/");
-
-        try {
-            Uri uri = getContentResolver().insert(MediaStore.Files.getContentUri("external"), contentValues);
-            if (uri != null) {
-                try (OutputStream outputStream = getContentResolver().openOutputStream(uri);
-                     BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream))) {
-                    writeTxtContent(writer, label);
-                    showToast((String) this.getResources().getText(R.string.export_success));
-                }
-            } else {
-                showToast((String) this.getResources().getText(R.string.export_error));
-            }
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
+    private void resetRecord() {
+        recordId = 0;
+        journal.clear();
     }
 
-    private void createTxtForBelowAndroid10(String label) {
-        File txtDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS);
-        if (!txtDir.exists()) return;
-
-        File txtFile = new File(txtDir, label + ".txt");
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(txtFile))) {
-            writeTxtContent(writer, label);
-            showToast((String) this.getResources().getText(R.string.export_success));
-        } catch (IOException e) {
-            e.fillInStackTrace();
-            showToast((String) this.getResources().getText(R.string.export_error));
-        }
+    private void discardRecord() {
+        if (recordId != 0) recordStore.discard(recordId);
+        resetRecord();
     }
 
-    private void writeTxtContent(BufferedWriter writer, String label) throws IOException {
-        writer.write(label + "\n");
-
-        for (int i = 1; i < formContainer.getChildCount(); i++) {
-            View child = formContainer.getChildAt(i);
-            if (child instanceof EditText) {
-                String field = capitalizeFirstLetter(((EditText) child).getHint().toString());
-                String value = capitalizeFirstLetter(((EditText) child).getText().toString().trim());
-                writer.write(field + ": " + value + "\n");
-            }
+    private void restoreForm(FormJournal.State state) {
+        generateForm(state.getTemplate());
+        if (state.size() != form.size()) return;
+        startRecord(state.getRecordId());
+        for (int slot = 0; slot < form.size(); slot++) {
+            String value = state.getValue(slot);
+            if (value == null) continue;
+            form.setCommitted(slot, value);
+            form.setPartial(slot, value);
+            persistField(slot);
         }
+        formAdapter.refresh();
     }
 
-    public String capitalizeFirstLetter(String input) {
-        if (input == null || input.isEmpty()) return input;
-        return input.substring(0, 1).toUpperCase() + input.substring(1);
+    private void saveRecord() {
+        FormSnapshot snapshot = snapshotForm();
+        if (recordId == 0) {
+            recordStore.save(snapshot);
+        } else {
+            for (int slot = 0; slot < snapshot.size(); slot++)
+                recordStore.put(recordId, slot, snapshot.getValue(slot));
+            recordStore.markSaved(recordId);
+        }
+        resetRecord();
     }
 
     private void showTemplateDialog() {
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        Set<String> templates = new HashSet<>(sharedPreferences.getStringSet("templates", new HashSet<>()));
-
-        try {
-            String[] files = getAssets().list("templates");
-            if (files != null) {
-                for (String filename : files) {
-                    templates.add(filename.replace(".json", ""));
-                }
-            }
-        } catch (IOException e) {
-            e.fillInStackTrace();
-        }
-
-        String[] templateArray = templates.toArray(new String[0]);
+        String[] templateArray = TemplateRegistry.getInstance(this).getNames();
 
         new AlertDialog.Builder(this)
                 .setTitle(R.string.templates_alert_title)
@@ -659,106 +500,39 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
     }
 
     private void generateForm(String templateName) {
-        SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        String templateJson = sharedPreferences.getString(templateName, null);
-
-        if (templateJson != null) {
-            generateFormFromPreferencesOrAssets(templateJson, false);
-        } else {
-            generateFormFromPreferencesOrAssets(templateName + ".json", true);
-        }
-
-        addFocusChangeListener();
-    }
-
-    private void generateFormFromPreferencesOrAssets(String source, boolean isAsset) {
-        JSONObject jsonObject = isAsset ? loadTemplate("templates/" + source) : loadTemplateFromString(source);
-        if (jsonObject == null) {
-            jsonObject = loadTemplate("templates/Default.json");
-            if (jsonObject == null) return;
-        }
-
-        formContainer.removeAllViews();
-        editTextMap.clear();
-
-        try {
-            String label = jsonObject.getString("label");
-            JSONObject data = jsonObject.getJSONObject("data");
-
-            TextView labelView = new TextView(this);
-            labelView.setText(label);
-            labelView.setTextSize(20);
-            formContainer.addView(labelView);
-
-            int index = 0;
-            for (Iterator<String> it = data.keys(); it.hasNext(); ) {
-                String key = it.next();
-                EditText editText = new EditText(this);
-                editText.setHint(key);
-                editText.setId(View.generateViewId());
-                editTextMap.put(key.toLowerCase(), editText);
-                result.add("");
-                resultP.add("");
-                formContainer.addView(editText);
-                if (index == 0) currentEditText = editText;
-                index++;
-            }
-        } catch (JSONException e) {
-            e.fillInStackTrace();
-        }
-    }
+        this.templateName = templateName;
+        TemplateRegistry registry = TemplateRegistry.getInstance(this);
+        TemplateRegistry.Template template = registry.get(templateName);
+        if (template == null) template = registry.getDefault();
+        if (template == null) return;
 
-    private void addFocusChangeListener() {
-        for (EditText editText : editTextMap.values()) {
-            editText.setOnFocusChangeListener((v, hasFocus) -> {
-                if (hasFocus) {
-                    currentEditText = editText;
-                }
-            });
-        }
-    }
-
-    private JSONObject loadTemplate(String path) {
-        try (InputStream is = getAssets().open(path)) {
-            byte[] buffer = new byte[is.available()];
-            is.read(buffer);
-            return new JSONObject(new String(buffer, StandardCharsets.UTF_8));
-        } catch (IOException | JSONException ex) {
-            return null;
-        }
+        form = new FormModel(template);
+        discardRecord();
+        uiDispatcher.setSlots(form.size());
+        formAdapter.setForm(form);
+        updateCommandGrammar();
     }
 
-    private JSONObject loadTemplateFromString(String templateJson) {
-        try {
-            return new JSONObject(templateJson);
-        } catch (JSONException ex) {
-            return null;
-        }
+    private void updateCommandGrammar() {
+        if (recognizerPool != null && commandMode)
+            recognizerPool.setGrammar(CommandGrammar.build(lineCommand, form.getNames()));
     }
 
     private void clear() {
-        if (speechService != null) {
-            setUiState(STATE_DONE);
-            speechService.stop();
-            speechService = null;
-        }
-        Collections.fill(resultP, "");
-        Collections.fill(result, "");
-        for (EditText editText : editTextMap.values()) editText.setText("");
+        if (listening) stopListening();
+        form.clear();
+        discardRecord();
+        uiDispatcher.clearText();
+        formAdapter.refresh();
     }
 
     private void copyToClipboard() {
-        String label = capitalizeFirstLetter(((TextView) formContainer.getChildAt(0)).getText().toString().trim());
+        FormSnapshot snapshot = snapshotForm();
         StringBuilder text = new StringBuilder();
-        text.append(label).append("\n");
-
-        for (int i = 1; i < formContainer.getChildCount(); i++) {
-            View child = formContainer.getChildAt(i);
-            if (child instanceof EditText) {
-                String field = capitalizeFirstLetter(((EditText) child).getHint().toString());
-                String value = capitalizeFirstLetter(((EditText) child).getText().toString().trim());
-                text.append(field).append(": ").append(value).append("\n");
-            }
+        text.append(snapshot.getLabel()).append("\n");
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            text.append(snapshot.getField(i)).append(": ").append(snapshot.getValue(i)).append("\n");
         }
 
         ClipboardManager clipboard = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
@@ -769,105 +543,150 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (speechService != null) {
-            speechService.stop();
-            speechService.shutdown();
-        }
-
+        destroyed = true;
+        session++;
+        // Results posted after this point would touch a torn-down activity
+        if (recognizerStage != null) recognizerStage.detach();
+        if (commandStage != null) commandStage.detach();
+        captureEngine.stop();
+        releaseRecognizer();
+
+        pendingFiles.clear();
         if (speechStreamService != null) {
             speechStreamService.stop();
         }
+        releaseFileRecognizer();
+        boolean poolClosed = recognizerPool == null || recognizerPool.close();
+        boolean queueStopped = transcriptionQueue == null || transcriptionQueue.shutdown();
+        if (!queueStopped || !poolClosed) Log.w(TAG, "Recognizers still running, keeping the model loaded");
+
+        if (modelRequested && queueStopped && poolClosed) modelManager.release(modelCallback);
 
         if (tts != null) {
             tts.stop();
         }
+
+        uiDispatcher.cancel();
+        exportEngine.shutdown();
     }
 
-    private String normalizeString(String text) {
-        text = Normalizer.normalize(text, Normalizer.Form.NFD);
-        text = text.replaceAll("\\p{InCombiningDiacriticalMarks}", "");
-        return text.toLowerCase().trim();
+    private void handleLineCommand(HypothesisProcessor processor, boolean partial) {
+        String lineName = processor.getLineName();
+        // Partials still change their mind; only a line name heard twice in a row moves the focus early
+        if (partial && !lineName.equals(partialLine)) {
+            partialLine = lineName;
+            return;
+        }
+        partialLine = null;
+        int slot = form.findSlot(lineName);
+        if (slot != -1 && slot != form.getActiveSlot()) {
+            form.setActiveSlot(slot);
+            showToast(lineName);
+            uiDispatcher.postFocus(slot);
+        }
     }
 
+    private final RecognitionListener commandListener = new RecognitionListener() {
+        @Override
+        public void onPartialResult(String hypothesis) {
+            if (commandPartialProcessor.process(hypothesis) == HypothesisProcessor.COMMAND)
+                handleLineCommand(commandPartialProcessor, true);
+        }
+
+        @Override
+        public void onResult(String hypothesis) {
+            if (commandResultProcessor.process(hypothesis) == HypothesisProcessor.COMMAND)
+                handleLineCommand(commandResultProcessor, false);
+        }
+
+        @Override
+        public void onFinalResult(String hypothesis) {
+        }
+
+        @Override
+        public void onError(Exception e) {
+        }
+
+        @Override
+        public void onTimeout() {
+        }
+    };
+
     @Override
     public void onPartialResult(String hypothesis) {
-        try {
-            JSONObject json = new JSONObject(hypothesis);
-            if (json.has("partial") && !json.get("partial").toString().isEmpty()) {
-                String text = json.getString("partial");
-                if (!text.trim().isEmpty()) {
-                    String normalizedText = normalizeString(text);
-                    String normalizedLineCommand = normalizeString(lineCommand);
-                    if (normalizedText.startsWith(normalizedLineCommand) || normalizedText.startsWith(normalizedLineCommand + " ")) {
-                        String lineName = normalizedText.replace(normalizedLineCommand, "").trim();
-                        if (editTextMap.containsKey(lineName)) {
-                            currentEditText = editTextMap.get(lineName);
-                            showToast(lineName);
-                            focusText();
-                        }
-                    } else {
-                        int index = getIndex();
-                        if (index != -1) {
-                            String value = textToNumber(normalizedText);
-                            resultP.set(index, result.get(index) + value + " ");
-                            fillText(resultP);
-                        }
-                    }
+        switch (partialProcessor.process(hypothesis)) {
+            case HypothesisProcessor.COMMAND:
+                handleLineCommand(partialProcessor, true);
+                break;
+            case HypothesisProcessor.TEXT:
+                int slot = form.getActiveSlot();
+                if (slot != -1) {
+                    String value = numberParser.textToNumber(partialProcessor.getRawText());
+                    form.setPartial(slot, form.getCommitted(slot) + value + " ");
+                    updateField(slot, form.getPartial(slot));
                 }
-            }
-        } catch (JSONException e) {
-            e.fillInStackTrace();
+                break;
         }
     }
 
     @Override
     public void onResult(String hypothesis) {
-        try {
-            JSONObject json = new JSONObject(hypothesis);
-            if (json.has("text") && !json.get("text").toString().isEmpty()) {
-                String text = json.getString("text");
-                if (!text.trim().isEmpty()) {
-                    String normalizedText = normalizeString(text);
-                    String normalizedLineCommand = normalizeString(lineCommand);
-                    if (normalizedText.startsWith(normalizedLineCommand) || normalizedText.startsWith(normalizedLineCommand + " ")) {
-                        String lineName = normalizedText.replace(normalizedLineCommand, "").trim();
-                        if (editTextMap.containsKey(lineName)) {
-                            currentEditText = editTextMap.get(lineName);
-                            showToast(lineName);
-                            focusText();
-                        }
-                    } else {
-                        int index = getIndex();
-                        if (index != -1) {
-                            String value = textToNumber(normalizedText);
-                            result.set(index, result.get(index) + value + " ");
-                            resultP.set(index, result.get(index));
-                            fillText(resultP);
-                        }
+        onResult(hypothesis, fileOrigin);
+    }
+
+    @Override
+    public void onResult(String hypothesis, long origin) {
+        partialProcessor.reset();
+        switch (resultProcessor.process(hypothesis)) {
+            case HypothesisProcessor.COMMAND:
+                handleLineCommand(resultProcessor, false);
+                break;
+            case HypothesisProcessor.TEXT:
+                int slot = form.getActiveSlot();
+                if (slot != -1) {
+                    String value = numberParser.textToNumber(resultProcessor.getRawText());
+                    form.setCommitted(slot, form.getCommitted(slot) + value + " ");
+                    form.setPartial(slot, form.getCommitted(slot));
+                    updateField(slot, form.getPartial(slot));
+                    WordTimings words = form.getWords(slot);
+                    int added = words.parse(hypothesis, origin);
+                    persistField(slot);
+                    if (added > 0) {
+                        long epoch = words.getEpoch();
+                        audioArchiver.markResult(slot, epoch + (long) (words.getStart(words.size() - added) * 1000),
+                                epoch + (long) (words.getEnd(words.size() - 1) * 1000));
                     }
                 }
-            }
-        } catch (JSONException e) {
-            e.fillInStackTrace();
+                break;
         }
     }
 
     @Override
     public void onFinalResult(String hypothesis) {
-        int index = getIndex();
-        if (index != -1) {
-            result.set(index, resultP.get(index));
-            resultP = resultP.stream().map(String::trim).collect(Collectors.toCollection(ArrayList::new));
-            result = result.stream().map(String::trim).collect(Collectors.toCollection(ArrayList::new));
-            fillText(result);
-            if (speechStreamService != null) {
-                speechStreamService = null;
+        partialProcessor.reset();
+        int activeSlot = form.getActiveSlot();
+        if (activeSlot != -1) {
+            form.setCommitted(activeSlot, form.getPartial(activeSlot));
+            for (int slot = 0; slot < form.size(); slot++) {
+                String trimmed = form.getCommitted(slot).trim();
+                form.setPartial(slot, form.getPartial(slot).trim());
+                if (!trimmed.equals(form.getCommitted(slot))) {
+                    form.setCommitted(slot, trimmed);
+                    uiDispatcher.postText(slot, trimmed);
+                    persistField(slot);
+                } else if (slot == activeSlot) {
+                    persistField(slot);
+                }
             }
+            uiDispatcher.postFocus(activeSlot);
         }
     }
 
     @Override
     public void onError(Exception e) {
+        listening = false;
+        captureEngine.stop();
+        releaseRecognizer();
         setErrorState(e.getMessage());
     }
 
@@ -876,140 +695,6 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
         setUiState(STATE_DONE);
     }
 
-    private static String textToNumber(String text) {
-        HashMap<String, Integer> mapNumber = getStringIntegerHashMap();
-        StringTokenizer tokenizer = new StringTokenizer(text);
-        StringBuilder result = new StringBuilder();
-        int currentNumber = 0;
-        int finalNumber = 0;
-        boolean numberFound = false;
-        boolean isPreviousWordNumber = false;
-        boolean isNegative = false;
-
-        while (tokenizer.hasMoreTokens()) {
-            String word = tokenizer.nextToken();
-
-            if (word.equals("menos")) {
-                if (tokenizer.hasMoreTokens()) {
-                    String nextWord = tokenizer.nextToken();
-                    if (mapNumber.containsKey(nextWord)) {
-                        isNegative = true;
-                        word = nextWord;
-                    } else {
-                        result.append("menos ").append(nextWord).append(" ");
-                        continue;
-                    }
-                } else {
-                    result.append("menos ");
-                    continue;
-                }
-            }
-
-            if (word.equals("y") && isPreviousWordNumber) {
-                continue;
-            }
-
-            if (mapNumber.containsKey(word)) {
-                int value = mapNumber.get(word);
-                numberFound = true;
-                isPreviousWordNumber = true;
-
-                if (value == 1000 || value == 1000000) {
-                    if (currentNumber == 0) {
-                        currentNumber = 1;
-                    }
-                    currentNumber *= value;
-                    finalNumber += currentNumber;
-                    currentNumber = 0;
-                } else if (value == 100 && currentNumber != 0) {
-                    currentNumber *= value;
-                } else {
-                    currentNumber += value;
-                }
-            } else {
-                if (numberFound) {
-                    finalNumber += currentNumber;
-                    if (isNegative) {
-                        finalNumber *= -1;
-                        isNegative = false;
-                    }
-                    result.append(finalNumber).append(" ");
-                    finalNumber = 0;
-                    currentNumber = 0;
-                    numberFound = false;
-                }
-                result.append(word).append(" ");
-                isPreviousWordNumber = false;
-            }
-        }
-
-        if (numberFound) {
-            finalNumber += currentNumber;
-            if (isNegative) {
-                finalNumber *= -1;
-            }
-            result.append(finalNumber);
-        }
-
-        return result.toString().trim();
-    }
-
-    @NonNull
-    private static HashMap<String, Integer> getStringIntegerHashMap() {
-        HashMap<String, Integer> mapNumber = new HashMap<>();
-        mapNumber.put("cero", 0);
-        mapNumber.put("uno", 1);
-        mapNumber.put("dos", 2);
-        mapNumber.put("tres", 3);
-        mapNumber.put("cuatro", 4);
-        mapNumber.put("cinco", 5);
-        mapNumber.put("seis", 6);
-        mapNumber.put("siete", 7);
-        mapNumber.put("ocho", 8);
-        mapNumber.put("nueve", 9);
-        mapNumber.put("diez", 10);
-        mapNumber.put("once", 11);
-        mapNumber.put("doce", 12);
-        mapNumber.put("trece", 13);
-        mapNumber.put("catorce", 14);
-        mapNumber.put("quince", 15);
-        mapNumber.put("dieciseis", 16);
-        mapNumber.put("diecisiete", 17);
-        mapNumber.put("dieciocho", 18);
-        mapNumber.put("diecinueve", 19);
-        mapNumber.put("veinte", 20);
-        mapNumber.put("veintiuno", 21);
-        mapNumber.put("veintidos", 22);
-        mapNumber.put("veintitres", 23);
-        mapNumber.put("veinticuatro", 24);
-        mapNumber.put("veinticinco", 25);
-        mapNumber.put("veintiseis", 26);
-        mapNumber.put("veintisiete", 27);
-        mapNumber.put("veintiocho", 28);
-        mapNumber.put("veintinueve", 29);
-        mapNumber.put("treinta", 30);
-        mapNumber.put("cuarenta", 40);
-        mapNumber.put("cincuenta", 50);
-        mapNumber.put("sesenta", 60);
-        mapNumber.put("setenta", 70);
-        mapNumber.put("ochenta", 80);
-        mapNumber.put("noventa", 90);
-        mapNumber.put("cien", 100);
-        mapNumber.put("ciento", 100);
-        mapNumber.put("doscientos", 200);
-        mapNumber.put("trescientos", 300);
-        mapNumber.put("cuatrocientos", 400);
-        mapNumber.put("quinientos", 500);
-        mapNumber.put("seiscientos", 600);
-        mapNumber.put("setecientos", 700);
-        mapNumber.put("ochocientos", 800);
-        mapNumber.put("novecientos", 900);
-        mapNumber.put("mil", 1000);
-        mapNumber.put("millon", 1000000);
-        mapNumber.put("millones", 1000000);
-        return mapNumber;
-    }
-
     private void setUiState(int state) {
         switch (state) {
             case STATE_START:
@@ -1025,7 +710,6 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
                 break;
             case STATE_DONE:
                 if (narrator) tts.speak("Grabación detenida");
-                stopRecording();
                 ((Button) findViewById(R.id.btn_record)).setText(R.string.record);
                 findViewById(R.id.btn_record).setEnabled(true);
                 findViewById(R.id.btn_pause).setEnabled(false);
@@ -1034,15 +718,19 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
                 break;
             case STATE_MIC:
                 if (narrator) tts.speak("Grabación iniciada");
-                startRecording();
                 ((Button) findViewById(R.id.btn_record)).setText(R.string.stop);
                 if (!preferences.getBoolean("visualizer_switch", true))
                     showToast((String) this.getResources().getText(R.string.recording));
                 findViewById(R.id.btn_record).setEnabled(true);
                 findViewById(R.id.btn_pause).setEnabled(true);
-                int index = getIndex();
-                if (index != -1)
-                    result.set(index, !result.get(index).isEmpty() ? result.get(index) + "\n" : result.get(index));
+                int slot = form.getActiveSlot();
+                if (slot != -1 && !form.getCommitted(slot).isEmpty())
+                    form.setCommitted(slot, form.getCommitted(slot) + "\n");
+                break;
+            case STATE_FILE:
+                progressBar.setVisibility(View.VISIBLE);
+                findViewById(R.id.btn_record).setEnabled(false);
+                findViewById(R.id.btn_pause).setEnabled(false);
                 break;
             default:
                 throw new IllegalStateException("Unexpected value: " + state);
@@ -1055,28 +743,14 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
         findViewById(R.id.btn_record).setEnabled(false);
     }
 
-    private int getIndex() {
-        for (HashMap.Entry<String, EditText> entry : editTextMap.entrySet()) {
-            if (entry.getValue().equals(currentEditText))
-                return new ArrayList<>(editTextMap.values()).indexOf(entry.getValue());
-        }
-        return -1;
-    }
-
-    private void fillText(ArrayList<String> list) {
-        int i = 0;
-        for (HashMap.Entry<String, EditText> entry : editTextMap.entrySet()) {
-            if (i >= list.size()) break;
-            entry.getValue().setText(list.get(i++));
-        }
-        focusText();
+    private void updateField(int slot, String text) {
+        uiDispatcher.postText(slot, text);
+        uiDispatcher.postFocus(slot);
     }
 
     private void focusText() {
-        if (currentEditText != null) {
-            currentEditText.requestFocus();
-            currentEditText.setSelection(currentEditText.getText().length());
-        }
+        int slot = form.getActiveSlot();
+        if (slot != -1) formAdapter.focus(slot);
     }
 
     public void showToast(String message) {
@@ -1086,77 +760,258 @@ public class MainActivity extends AppCompatActivity implements RecognitionListen
     }
 
     private void recognizeMicrophone() {
-        if (speechService != null) {
-            setUiState(STATE_DONE);
-            speechService.stop();
-            speechService = null;
+        if (listening) {
+            stopListening();
+            return;
+        }
+        listening = true;
+        long requestedAt = System.nanoTime();
+        setUiState(STATE_MIC);
+        recognizerPool.acquire(new UiCallback(recognizer -> startCapture(recognizer, requestedAt), e -> {
+            listening = false;
+            setErrorState(e.getMessage());
+        }, recognizerPool::release));
+    }
+
+    private void startCapture(Recognizer recognizer, long requestedAt) {
+        RecognizerStage stage = new RecognizerStage(recognizer, this, requestedAt, recognizerPool.getFedSamples(recognizer));
+        recognizerStage = stage;
+        recognizerBuffer = new BufferedConsumer(stage, () -> recognizerPool.release(recognizer, stage.getFedSamples()));
+        if (preferences.getBoolean("vad_switch", false)) {
+            voiceGate = new VoiceGate(preferences.getInt("vad_threshold", 250), preferences.getInt("vad_hangover", 800), recognizerBuffer);
+            captureEngine.addConsumer(voiceGate);
         } else {
-            setUiState(STATE_MIC);
-            try {
-                Recognizer rec = new Recognizer(model, 16000.0f);
-                speechService = new SpeechService(rec, 16000.0f);
-                speechService.startListening(this);
-            } catch (IOException e) {
-                setErrorState(e.getMessage());
+            captureEngine.addConsumer(recognizerBuffer);
+        }
+        try {
+            captureEngine.start();
+        } catch (IOException e) {
+            listening = false;
+            releaseRecognizer();
+            setErrorState(e.getMessage());
+            return;
+        }
+        // Dictation starts right away; commands join once the grammar recognizer is compiled
+        if (commandMode) recognizerPool.acquireGrammar(new UiCallback(grammarRecognizer -> attachCommandStage(grammarRecognizer, requestedAt),
+                e -> e.fillInStackTrace(), recognizerPool::releaseGrammar));
+    }
+
+    private void attachCommandStage(Recognizer grammarRecognizer, long requestedAt) {
+        commandStage = new RecognizerStage(grammarRecognizer, commandListener, requestedAt);
+        commandBuffer = new BufferedConsumer(commandStage, () -> recognizerPool.releaseGrammar(grammarRecognizer));
+        commandBuffer.onStart();
+        if (voiceGate != null) voiceGate.addTarget(commandBuffer);
+        else captureEngine.addConsumer(commandBuffer);
+    }
+
+    private void stopListening() {
+        session++;
+        listening = false;
+        setUiState(STATE_DONE);
+        captureEngine.stop();
+        if (recognizerStage != null) recognizerPool.recordStartLatency(recognizerStage.getStartLatencyNanos());
+        releaseRecognizer();
+        uiDispatcher.logCounters();
+    }
+
+    private void transcribeNextFile() {
+        releaseFileRecognizer();
+        Uri uri = pendingFiles.poll();
+        if (uri == null) {
+            setUiState(STATE_READY);
+            return;
+        }
+        if (listening) stopListening();
+
+        WavReader reader;
+        try {
+            fileStream = openStream(uri);
+            reader = WavReader.open(fileStream, WavReader.isRaw(displayName(uri)), AudioCaptureEngine.SAMPLE_RATE);
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            showFileError(uri);
+            transcribeNextFile();
+            return;
+        }
+        setUiState(STATE_FILE);
+        recognizerPool.acquire(reader.getSampleRate(), new UiCallback(recognizer -> {
+            fileRecognizer = recognizer;
+            fileOrigin = System.currentTimeMillis() - recognizerPool.getFedSamples(recognizer) * 1000 / reader.getSampleRate();
+            speechStreamService = new SpeechStreamService(recognizer, reader.getStream(), reader.getSampleRate());
+            speechStreamService.start(fileListener);
+        }, e -> {
+            showFileError(uri);
+            transcribeNextFile();
+        }, recognizerPool::release));
+    }
+
+    private void showFileError(Uri uri) {
+        showToast(getResources().getText(R.string.file_error) + ": " + uri.getLastPathSegment());
+    }
+
+    // Pool callbacks arrive on the pool executor; a recognizer nobody is waiting for any more goes straight back
+    private class UiCallback implements RecognizerPool.Callback {
+        private final int expected = session;
+        private final Consumer<Recognizer> ready;
+        private final Consumer<IOException> failed;
+        private final Consumer<Recognizer> giveBack;
+
+        private UiCallback(Consumer<Recognizer> ready, Consumer<IOException> failed, Consumer<Recognizer> giveBack) {
+            this.ready = ready;
+            this.failed = failed;
+            this.giveBack = giveBack;
+        }
+
+        @Override
+        public void onReady(Recognizer recognizer) {
+            if (destroyed) {
+                giveBack.accept(recognizer);
+                return;
             }
+            runOnUiThread(() -> {
+                if (destroyed || expected != session) giveBack.accept(recognizer);
+                else ready.accept(recognizer);
+            });
+        }
+
+        @Override
+        public void onError(IOException e) {
+            runOnUiThread(() -> {
+                if (!destroyed && expected == session) failed.accept(e);
+            });
         }
     }
 
-    private void togglePause() {
-        if (speechService != null) {
-            isPaused = !isPaused;
-            speechService.setPause(isPaused);
-            if (isPaused) stopRecording();
-            else startRecording();
-            ((Button) findViewById(R.id.btn_pause)).setText(isPaused ? R.string.resume : R.string.pause);
+    private final RecognitionListener fileListener = new RecognitionListener() {
+        @Override
+        public void onPartialResult(String hypothesis) {
+            if (isDestroyed()) return;
+            MainActivity.this.onPartialResult(hypothesis);
+        }
+
+        @Override
+        public void onResult(String hypothesis) {
+            if (isDestroyed()) return;
+            MainActivity.this.onResult(hypothesis);
+        }
+
+        @Override
+        public void onFinalResult(String hypothesis) {
+            if (isDestroyed()) return;
+            MainActivity.this.onFinalResult(hypothesis);
+            transcribeNextFile();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            if (isDestroyed()) return;
+            showToast(getResources().getText(R.string.file_error) + ": " + e.getMessage());
+            transcribeNextFile();
+        }
+
+        @Override
+        public void onTimeout() {
+            if (isDestroyed()) return;
+            transcribeNextFile();
+        }
+    };
+
+    private String displayName(Uri uri) {
+        try (Cursor cursor = getContentResolver().query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && cursor.getString(0) != null) return cursor.getString(0);
         }
+        String segment = uri.getLastPathSegment();
+        return segment != null ? segment : "";
     }
 
-    private void startRecording() {
-        if (!preferences.getBoolean("visualizer_switch", true)) return;
-        int sampleRate = 16000;
-        int bufferSize = AudioRecord.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_IN_DEFAULT, AudioFormat.ENCODING_PCM_16BIT);
+    private InputStream openStream(Uri uri) throws IOException {
+        InputStream inputStream = getContentResolver().openInputStream(uri);
+        if (inputStream == null) throw new IOException("Failed to open " + uri);
+        return inputStream;
+    }
 
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO}, PERMISSIONS_REQUEST_RECORD_AUDIO);
-        } else {
-            audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate,
-                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize);
+    private void transcribeFolder(Uri tree) {
+        if (model == null) {
+            showToast((String) getResources().getText(R.string.model_not_ready));
+            return;
         }
+        if (transcriptionQueue == null) {
+            transcriptionQueue = new TranscriptionQueue(model, TranscriptionQueue.defaultWorkers(),
+                    getExternalFilesDir("transcripts"), new TranscriptionQueue.Listener() {
+                @Override
+                public void onFileDone(String name, File output, long elapsedMs) {
+                    Log.d(TAG, "Transcribed " + name + " in " + elapsedMs + " ms");
+                }
 
-        audioRecord.startRecording();
-        isRecording = true;
+                @Override
+                public void onFileError(String name, Exception e) {
+                    runOnUiThread(() -> showToast(getResources().getText(R.string.file_error) + ": " + name));
+                }
 
-        recordingThread = new Thread(() -> {
-            short[] buffer = new short[bufferSize];
-            while (isRecording) {
-                int read = audioRecord.read(buffer, 0, buffer.length);
-                if (read > 0) {
-                    float amplitude = calculateAmplitude(buffer, read);
-                    runOnUiThread(() -> visualizer.addAmplitude(amplitude));
+                @Override
+                public void onIdle() {
+                    runOnUiThread(() -> showToast((String) getResources().getText(R.string.transcription_done)));
                 }
+            });
+        }
+
+        Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(tree, DocumentsContract.getTreeDocumentId(tree));
+        String[] projection = {DocumentsContract.Document.COLUMN_DOCUMENT_ID, DocumentsContract.Document.COLUMN_DISPLAY_NAME, DocumentsContract.Document.COLUMN_MIME_TYPE};
+        int count = 0;
+        try (Cursor cursor = getContentResolver().query(children, projection, null, null, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                String name = cursor.getString(1), mimeType = cursor.getString(2);
+                boolean wav = name.toLowerCase(Locale.ROOT).endsWith(".wav") || (mimeType != null && mimeType.contains("wav"));
+                if (!wav && !WavReader.isRaw(name)) continue;
+                Uri uri = DocumentsContract.buildDocumentUriUsingTree(tree, cursor.getString(0));
+                transcriptionQueue.submit(uri.toString(), name, () -> openStream(uri));
+                count++;
             }
-        });
+        }
+        showToast(getString(R.string.transcription_queued, count));
+    }
 
-        recordingThread.start();
+    private void releaseFileRecognizer() {
+        speechStreamService = null;
+        if (fileStream != null) {
+            try {
+                fileStream.close();
+            } catch (IOException e) {
+                e.fillInStackTrace();
+            }
+            fileStream = null;
+        }
+        if (fileRecognizer == null) return;
+        // SpeechStreamService does not report how much of the file it fed, so the recognizer's time base is lost
+        if (recognizerPool != null) recognizerPool.discard(fileRecognizer);
+        fileRecognizer = null;
     }
 
-    private void stopRecording() {
-        if (!preferences.getBoolean("visualizer_switch", true)) return;
-        if (audioRecord != null) {
-            isRecording = false;
-            audioRecord.stop();
-            audioRecord.release();
-            audioRecord = null;
-            recordingThread = null;
+    private void releaseRecognizer() {
+        if (voiceGate != null) {
+            captureEngine.removeConsumer(voiceGate);
+            voiceGate = null;
+        }
+        // The buffers hand their recognizers back to the pool once decoding has drained
+        if (commandBuffer != null) {
+            captureEngine.removeConsumer(commandBuffer);
+            commandBuffer.release();
+            commandBuffer = null;
         }
+        commandStage = null;
+        if (recognizerBuffer != null) {
+            captureEngine.removeConsumer(recognizerBuffer);
+            recognizerBuffer.release();
+            recognizerBuffer = null;
+        }
+        recognizerStage = null;
     }
 
-    private float calculateAmplitude(short[] buffer, int read) {
-        float sum = 0;
-        for (int i = 0; i < read; i++) {
-            sum += Math.abs(buffer[i]);
+    private void togglePause() {
+        if (captureEngine.isCapturing()) {
+            isPaused = !isPaused;
+            captureEngine.setPaused(isPaused);
+            ((Button) findViewById(R.id.btn_pause)).setText(isPaused ? R.string.resume : R.string.pause);
         }
-        return sum / read;
     }
 }
@@ -0,0 +1,213 @@
+package com.jahirtrap.vosk;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import org.vosk.Model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class ModelManager implements ComponentCallbacks2 {
+    private static final String TAG = "ModelManager", HASH_FILE = "uuid";
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static ModelManager instance;
+    private final ArrayList<Callback> pending = new ArrayList<>();
+    private final Context context;
+    private volatile long unpackMs = -1, loadMs = -1;
+    private Model model;
+    private boolean loading = false;
+    private int users = 0;
+
+    public interface Callback {
+        void onReady(Model model);
+
+        void onError(IOException e);
+    }
+
+    private ModelManager(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @MainThread
+    public static ModelManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new ModelManager(context);
+            instance.context.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    @MainThread
+    public void acquire(String sourcePath, String targetPath, Callback callback) {
+        users++;
+        if (model != null) {
+            callback.onReady(model);
+            return;
+        }
+        pending.add(callback);
+        if (loading) return;
+        loading = true;
+        executor.execute(() -> {
+            try {
+                long start = SystemClock.elapsedRealtime();
+                File target = unpack(sourcePath, targetPath);
+                unpackMs = SystemClock.elapsedRealtime() - start;
+
+                start = SystemClock.elapsedRealtime();
+                Model model = new Model(target.getAbsolutePath());
+                loadMs = SystemClock.elapsedRealtime() - start;
+
+                Log.d(TAG, "Model unpack: " + unpackMs + " ms, load: " + loadMs + " ms");
+                mainHandler.post(() -> deliver(model, null));
+            } catch (IOException e) {
+                mainHandler.post(() -> deliver(null, e));
+            }
+        });
+    }
+
+    @MainThread
+    public void release(Callback callback) {
+        if (users > 0) users--;
+        pending.remove(callback);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND && users == 0 && model != null) {
+            Log.d(TAG, "Releasing model on trim level " + level);
+            model.close();
+            model = null;
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    private void deliver(Model model, IOException error) {
+        loading = false;
+        this.model = model;
+        ArrayList<Callback> callbacks = new ArrayList<>(pending);
+        pending.clear();
+        for (Callback callback : callbacks) {
+            if (model != null) callback.onReady(model);
+            else callback.onError(error);
+        }
+    }
+
+    public long getUnpackMs() {
+        return unpackMs;
+    }
+
+    public long getLoadMs() {
+        return loadMs;
+    }
+
+    private File unpack(String sourcePath, String targetPath) throws IOException {
+        AssetManager assets = context.getAssets();
+        File root = context.getExternalFilesDir(null);
+        if (root == null) root = context.getFilesDir();
+        File target = new File(root, targetPath);
+
+        String hash = readAsset(assets, sourcePath + "/" + HASH_FILE);
+        File hashFile = new File(target, HASH_FILE);
+        if (hashFile.exists() && hash.equals(new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.UTF_8).trim()))
+            return target;
+
+        File temp = new File(root, targetPath + ".tmp");
+        deleteRecursive(temp);
+        copyAssets(assets, sourcePath, temp);
+        // Hash goes last so an interrupted unpack is never taken as installed
+        copyAsset(assets, sourcePath + "/" + HASH_FILE, new File(temp, HASH_FILE));
+        deleteRecursive(target);
+        if (!temp.renameTo(target)) throw new IOException("Failed to move " + temp + " to " + target);
+        return target;
+    }
+
+    private void copyAssets(AssetManager assets, String path, File target) throws IOException {
+        String[] children = assets.list(path);
+        if (children == null || children.length == 0) {
+            copyAsset(assets, path, target);
+            return;
+        }
+        if (!target.mkdirs() && !target.isDirectory()) throw new IOException("Failed to create " + target);
+        for (String child : children) {
+            if (child.equals(HASH_FILE)) continue;
+            copyAssets(assets, path + "/" + child, new File(target, child));
+        }
+    }
+
+    private void copyAsset(AssetManager assets, String path, File target) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(path);
+        } catch (FileNotFoundException e) {
+            descriptor = null;
+        }
+
+        if (descriptor != null) {
+            try (AssetFileDescriptor fd = descriptor;
+                 FileChannel in = new FileInputStream(fd.getFileDescriptor()).getChannel();
+                 FileChannel out = new FileOutputStream(target).getChannel()) {
+                long offset = fd.getStartOffset(), length = fd.getLength(), done = 0;
+                while (done < length) done += in.transferTo(offset + done, length - done, out);
+            }
+            return;
+        }
+
+        try (InputStream in = assets.open(path, AssetManager.ACCESS_STREAMING);
+             OutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+        }
+    }
+
+    private static String readAsset(AssetManager assets, String path) throws IOException {
+        try (InputStream in = assets.open(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    private static void deleteRecursive(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursive(child);
+        }
+        if (file.exists() && !file.delete()) Log.w(TAG, "Failed to delete " + file);
+    }
+}
@@ -0,0 +1,290 @@
+package com.jahirtrap.vosk;
+
+import android.util.Log;
+
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class RecognizerPool {
+    private static final String TAG = "RecognizerPool";
+    private static final long CLOSE_TIMEOUT_MS = 2000;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ArrayDeque<Recognizer> idle = new ArrayDeque<>();
+    private final Model model;
+    private final float sampleRate;
+    private final IdentityHashMap<Recognizer, Boolean> foreign = new IdentityHashMap<>();
+    private final IdentityHashMap<Recognizer, Long> fedSamples = new IdentityHashMap<>();
+    private Recognizer grammarRecognizer;
+    private String grammar, idleGrammar, activeGrammar;
+    private boolean closed = false, warming = false;
+    private long lastStartLatencyNanos = -1, totalStartLatencyNanos = 0;
+    private int sessions = 0, outstanding = 0;
+
+    public RecognizerPool(Model model, float sampleRate) {
+        this.model = model;
+        this.sampleRate = sampleRate;
+    }
+
+    public interface Callback {
+        void onReady(Recognizer recognizer);
+
+        void onError(IOException e);
+    }
+
+    public synchronized void warmUp() {
+        if (!idle.isEmpty() || warming || closed) return;
+        warming = true;
+        executor.execute(() -> {
+            Recognizer recognizer = null;
+            try {
+                recognizer = create(sampleRate);
+            } catch (IOException e) {
+                e.fillInStackTrace();
+            }
+            synchronized (this) {
+                warming = false;
+                if (recognizer == null) return;
+                if (closed) recognizer.close();
+                else idle.push(recognizer);
+            }
+        });
+    }
+
+    public void acquire(Callback callback) {
+        acquire(sampleRate, callback);
+    }
+
+    // Hands out an idle recognizer right away, otherwise builds one on the pool executor; never blocks the caller
+    public void acquire(float rate, Callback callback) {
+        Recognizer recognizer;
+        synchronized (this) {
+            if (!closed) {
+                recognizer = rate == sampleRate ? idle.poll() : null;
+                if (recognizer == null) {
+                    executor.execute(() -> create(rate, callback));
+                    return;
+                }
+                outstanding++;
+            } else {
+                recognizer = null;
+            }
+        }
+        if (recognizer == null) callback.onError(new IOException("Recognizer pool closed"));
+        else callback.onReady(recognizer);
+    }
+
+    private void create(float rate, Callback callback) {
+        Recognizer recognizer;
+        synchronized (this) {
+            // A warm-up queued ahead of this task may have filled the pool
+            recognizer = rate == sampleRate ? idle.poll() : null;
+            if (recognizer != null) outstanding++;
+        }
+        if (recognizer == null) {
+            try {
+                recognizer = create(rate);
+            } catch (IOException e) {
+                callback.onError(e);
+                return;
+            }
+            synchronized (this) {
+                if (closed) {
+                    recognizer.close();
+                    callback.onError(new IOException("Recognizer pool closed"));
+                    return;
+                }
+                if (rate != sampleRate) foreign.put(recognizer, Boolean.TRUE);
+                outstanding++;
+            }
+        }
+        callback.onReady(recognizer);
+    }
+
+    private Recognizer create(float rate) throws IOException {
+        Recognizer recognizer = new Recognizer(model, rate);
+        recognizer.setWords(true);
+        return recognizer;
+    }
+
+    // Kaldi keeps word times running across reset(), so a reused recognizer reports them from where its last session stopped
+    public synchronized long getFedSamples(Recognizer recognizer) {
+        Long samples = fedSamples.get(recognizer);
+        return samples == null ? 0 : samples;
+    }
+
+    public synchronized void release(Recognizer recognizer) {
+        release(recognizer, getFedSamples(recognizer));
+    }
+
+    public synchronized void release(Recognizer recognizer, long samples) {
+        returned();
+        if (closed || foreign.remove(recognizer) != null) {
+            fedSamples.remove(recognizer);
+            recognizer.close();
+            return;
+        }
+        fedSamples.put(recognizer, samples);
+        recognizer.reset();
+        idle.push(recognizer);
+    }
+
+    // For recognizers fed an unknown amount of audio; a fresh one is built to take its place
+    public synchronized void discard(Recognizer recognizer) {
+        returned();
+        foreign.remove(recognizer);
+        fedSamples.remove(recognizer);
+        recognizer.close();
+        warmUp();
+    }
+
+    public synchronized void setGrammar(String grammar) {
+        this.grammar = grammar;
+        if (grammar == null || closed) return;
+        executor.execute(() -> compileGrammar(grammar));
+    }
+
+    // Hands out the compiled grammar recognizer right away, otherwise compiles it on the pool executor
+    public void acquireGrammar(Callback callback) {
+        Recognizer recognizer = null;
+        synchronized (this) {
+            if (!closed && grammar != null) {
+                recognizer = takeGrammar();
+                if (recognizer == null) {
+                    executor.execute(() -> deliverGrammar(callback));
+                    return;
+                }
+            }
+        }
+        if (recognizer == null) callback.onError(new IOException("No command grammar"));
+        else callback.onReady(recognizer);
+    }
+
+    private void deliverGrammar(Callback callback) {
+        String target;
+        synchronized (this) {
+            target = closed ? null : grammar;
+        }
+        if (target == null) {
+            callback.onError(new IOException("No command grammar"));
+            return;
+        }
+        try {
+            compileGrammar(target);
+        } catch (RuntimeException e) {
+            callback.onError(new IOException(e));
+            return;
+        }
+        Recognizer recognizer;
+        synchronized (this) {
+            recognizer = closed ? null : takeGrammar();
+            // The grammar changed while compiling; compile the new one next
+            if (recognizer == null && !closed) {
+                executor.execute(() -> deliverGrammar(callback));
+                return;
+            }
+        }
+        if (recognizer == null) callback.onError(new IOException("No command grammar"));
+        else callback.onReady(recognizer);
+    }
+
+    private Recognizer takeGrammar() {
+        if (grammarRecognizer == null || grammar == null || !grammar.equals(idleGrammar)) return null;
+        Recognizer recognizer = grammarRecognizer;
+        grammarRecognizer = null;
+        activeGrammar = idleGrammar;
+        outstanding++;
+        return recognizer;
+    }
+
+    public synchronized void releaseGrammar(Recognizer recognizer) {
+        returned();
+        if (grammarRecognizer != null || closed) {
+            recognizer.close();
+            return;
+        }
+        recognizer.reset();
+        grammarRecognizer = recognizer;
+        idleGrammar = activeGrammar;
+        if (grammar != null && !grammar.equals(idleGrammar)) {
+            String target = grammar;
+            executor.execute(() -> compileGrammar(target));
+        }
+    }
+
+    private void compileGrammar(String target) {
+        Recognizer recognizer;
+        synchronized (this) {
+            if (closed || !target.equals(grammar)) return;
+            if (grammarRecognizer != null && target.equals(idleGrammar)) return;
+            recognizer = grammarRecognizer;
+            grammarRecognizer = null;
+        }
+
+        if (recognizer == null) recognizer = new Recognizer(model, sampleRate, target);
+        else recognizer.setGrammar(target);
+
+        synchronized (this) {
+            if (grammarRecognizer == null && !closed) {
+                grammarRecognizer = recognizer;
+                idleGrammar = target;
+            } else {
+                recognizer.close();
+            }
+        }
+    }
+
+    public synchronized void recordStartLatency(long nanos) {
+        if (nanos < 0) return;
+        lastStartLatencyNanos = nanos;
+        totalStartLatencyNanos += nanos;
+        sessions++;
+        Log.d(TAG, "Start latency: " + getLastStartLatencyMs() + " ms (avg " + getAverageStartLatencyMs() + " ms over " + sessions + " sessions)");
+    }
+
+    public synchronized long getLastStartLatencyMs() {
+        return lastStartLatencyNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(lastStartLatencyNanos);
+    }
+
+    public synchronized long getAverageStartLatencyMs() {
+        return sessions == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(totalStartLatencyNanos / sessions);
+    }
+
+    // Waits for grammar compiles and for every handed-out recognizer, so the model can be released afterwards
+    public boolean close() {
+        synchronized (this) {
+            closed = true;
+            for (Recognizer recognizer : idle) recognizer.close();
+            idle.clear();
+            fedSamples.clear();
+            if (grammarRecognizer != null) {
+                grammarRecognizer.close();
+                grammarRecognizer = null;
+            }
+            executor.shutdown();
+        }
+
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+        try {
+            boolean terminated = executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                long remaining;
+                while (outstanding > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) wait(remaining);
+                return terminated && outstanding == 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void returned() {
+        if (outstanding > 0 && --outstanding == 0) notifyAll();
+    }
+}
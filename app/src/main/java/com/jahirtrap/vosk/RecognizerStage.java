@@ -0,0 +1,114 @@
+package com.jahirtrap.vosk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.vosk.Recognizer;
+import org.vosk.android.RecognitionListener;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RecognizerStage implements AudioCaptureEngine.Consumer {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicReference<String> partial = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Result> results = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable deliver = this::deliver;
+    private final Recognizer recognizer;
+    private final RecognitionListener listener;
+    private final long requestedAt;
+    private volatile long startLatencyNanos = -1;
+    private volatile boolean detached = false;
+    private long fedSamples;
+
+    public interface Listener extends RecognitionListener {
+        void onResult(String hypothesis, long origin);
+    }
+
+    private static class Result {
+        private final String hypothesis;
+        private final long origin;
+        private final boolean last;
+
+        private Result(String hypothesis, long origin, boolean last) {
+            this.hypothesis = hypothesis;
+            this.origin = origin;
+            this.last = last;
+        }
+    }
+
+    public RecognizerStage(Recognizer recognizer, RecognitionListener listener, long requestedAt) {
+        this(recognizer, listener, requestedAt, 0);
+    }
+
+    // baseSamples is the audio the recognizer was fed before, which its word times still count
+    public RecognizerStage(Recognizer recognizer, RecognitionListener listener, long requestedAt, long baseSamples) {
+        this.recognizer = recognizer;
+        this.listener = listener;
+        this.requestedAt = requestedAt;
+        this.fedSamples = baseSamples;
+    }
+
+    public Recognizer getRecognizer() {
+        return recognizer;
+    }
+
+    public long getFedSamples() {
+        return fedSamples;
+    }
+
+    public long getStartLatencyNanos() {
+        return startLatencyNanos;
+    }
+
+    public void detach() {
+        detached = true;
+    }
+
+    @Override
+    public void onAudio(short[] buffer, int read) {
+        if (startLatencyNanos < 0) startLatencyNanos = System.nanoTime() - requestedAt;
+        fedSamples += read;
+        if (recognizer.acceptWaveForm(buffer, read)) {
+            long origin = System.currentTimeMillis() - fedSamples * 1000 / AudioCaptureEngine.SAMPLE_RATE;
+            partial.set(null);
+            results.add(new Result(recognizer.getResult(), origin, false));
+        } else {
+            partial.set(recognizer.getPartialResult());
+        }
+        schedule();
+    }
+
+    @Override
+    public void onStop() {
+        partial.set(null);
+        results.add(new Result(recognizer.getFinalResult(), 0, true));
+        schedule();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        mainHandler.post(() -> {
+            if (!detached) listener.onError(e);
+        });
+    }
+
+    // At most one delivery is queued on the main thread; it drains every result, then the latest partial
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) mainHandler.post(deliver);
+    }
+
+    private void deliver() {
+        scheduled.set(false);
+        Result result;
+        while (!detached && (result = results.poll()) != null) {
+            if (result.last) listener.onFinalResult(result.hypothesis);
+            else if (listener instanceof Listener) ((Listener) listener).onResult(result.hypothesis, result.origin);
+            else listener.onResult(result.hypothesis);
+        }
+        String hypothesis = partial.getAndSet(null);
+        if (hypothesis != null && !detached) listener.onPartialResult(hypothesis);
+    }
+}
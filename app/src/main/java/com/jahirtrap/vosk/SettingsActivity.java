@@ -53,6 +53,39 @@ public class SettingsActivity extends AppCompatActivity {
                 });
             }
 
+            SwitchPreferenceCompat commandSwitch = findPreference("command_switch");
+            if (commandSwitch != null) {
+                updateCommandSummary(commandSwitch);
+
+                commandSwitch.setOnPreferenceChangeListener((preference, value) -> {
+                    boolean isChecked = (Boolean) value;
+                    updateCommandSummary((SwitchPreferenceCompat) preference, isChecked);
+                    return true;
+                });
+            }
+
+            SwitchPreferenceCompat archiveSwitch = findPreference("archive_switch");
+            if (archiveSwitch != null) {
+                updateArchiveSummary(archiveSwitch);
+
+                archiveSwitch.setOnPreferenceChangeListener((preference, value) -> {
+                    boolean isChecked = (Boolean) value;
+                    updateArchiveSummary((SwitchPreferenceCompat) preference, isChecked);
+                    return true;
+                });
+            }
+
+            SwitchPreferenceCompat vadSwitch = findPreference("vad_switch");
+            if (vadSwitch != null) {
+                updateVadSummary(vadSwitch);
+
+                vadSwitch.setOnPreferenceChangeListener((preference, value) -> {
+                    boolean isChecked = (Boolean) value;
+                    updateVadSummary((SwitchPreferenceCompat) preference, isChecked);
+                    return true;
+                });
+            }
+
             SwitchPreferenceCompat visualizerSwitch = findPreference("visualizer_switch");
             if (visualizerSwitch != null) {
                 updateVisualizerSummary(visualizerSwitch);
@@ -118,6 +151,33 @@ public class SettingsActivity extends AppCompatActivity {
             preference.setSummary(getString(R.string.line_command_summary, value));
         }
 
+        private void updateCommandSummary(SwitchPreferenceCompat preference) {
+            updateCommandSummary(preference, preference.isChecked());
+        }
+
+        private void updateCommandSummary(SwitchPreferenceCompat preference, boolean isEnabled) {
+            String status = isEnabled ? getString(R.string.on) : getString(R.string.off);
+            preference.setSummary(getString(R.string.command_switch_summary, status));
+        }
+
+        private void updateArchiveSummary(SwitchPreferenceCompat preference) {
+            updateArchiveSummary(preference, preference.isChecked());
+        }
+
+        private void updateArchiveSummary(SwitchPreferenceCompat preference, boolean isEnabled) {
+            String status = isEnabled ? getString(R.string.on) : getString(R.string.off);
+            preference.setSummary(getString(R.string.archive_switch_summary, status));
+        }
+
+        private void updateVadSummary(SwitchPreferenceCompat preference) {
+            updateVadSummary(preference, preference.isChecked());
+        }
+
+        private void updateVadSummary(SwitchPreferenceCompat preference, boolean isEnabled) {
+            String status = isEnabled ? getString(R.string.on) : getString(R.string.off);
+            preference.setSummary(getString(R.string.vad_switch_summary, status));
+        }
+
         private void updateVisualizerSummary(SwitchPreferenceCompat preference) {
             updateVisualizerSummary(preference, preference.isChecked());
         }
@@ -0,0 +1,72 @@
+package com.jahirtrap.vosk;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+public class TemplateListAdapter extends ListAdapter<TemplateRegistry.Template, TemplateListAdapter.Holder> {
+    private static final DiffUtil.ItemCallback<TemplateRegistry.Template> DIFF = new DiffUtil.ItemCallback<TemplateRegistry.Template>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TemplateRegistry.Template oldItem, @NonNull TemplateRegistry.Template newItem) {
+            return oldItem.isAsset() == newItem.isAsset() && oldItem.getName().equals(newItem.getName());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TemplateRegistry.Template oldItem, @NonNull TemplateRegistry.Template newItem) {
+            return oldItem == newItem;
+        }
+    };
+    private final Listener listener;
+
+    public interface Listener {
+        void onEdit(TemplateRegistry.Template template);
+
+        void onDelete(TemplateRegistry.Template template);
+    }
+
+    public TemplateListAdapter(Listener listener) {
+        super(DIFF);
+        this.listener = listener;
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.template_item, parent, false);
+        return new Holder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        TemplateRegistry.Template template = getItem(position);
+        holder.textLabel.setText(template.getLabel());
+        holder.btnDelete.setVisibility(template.isAsset() ? View.GONE : View.VISIBLE);
+    }
+
+    public class Holder extends RecyclerView.ViewHolder {
+        private final TextView textLabel;
+        private final ImageView btnEdit, btnDelete;
+
+        private Holder(View view) {
+            super(view);
+            textLabel = view.findViewById(R.id.text_label);
+            btnEdit = view.findViewById(R.id.btn_edit);
+            btnDelete = view.findViewById(R.id.btn_delete);
+            btnEdit.setOnClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) listener.onEdit(getItem(position));
+            });
+            btnDelete.setOnClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) listener.onDelete(getItem(position));
+            });
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.jahirtrap.vosk;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class TemplateRegistry {
+    private static final String ASSET_DIR = "templates", DEFAULT = "Default";
+    private static TemplateRegistry instance;
+    private final Context context;
+    private final TemplateStore store;
+    private LinkedHashMap<String, Template> assets;
+    private TreeMap<String, Template> user;
+    private String[] names;
+
+    public static class Template {
+        private final String name, label;
+        private final String[] fields, keys;
+        private final boolean asset;
+
+        private Template(String name, String label, List<String> fields, boolean asset) {
+            this.name = name.intern();
+            this.label = label.intern();
+            this.fields = new String[fields.size()];
+            this.keys = new String[this.fields.length];
+            for (int i = 0; i < this.fields.length; i++) {
+                this.fields[i] = fields.get(i).intern();
+                this.keys[i] = TextNormalizer.normalize(this.fields[i]).intern();
+            }
+            this.asset = asset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int size() {
+            return fields.length;
+        }
+
+        public String getField(int slot) {
+            return fields[slot];
+        }
+
+        public String getKey(int slot) {
+            return keys[slot];
+        }
+
+        public List<String> getFields() {
+            return Collections.unmodifiableList(Arrays.asList(fields));
+        }
+
+        public boolean isAsset() {
+            return asset;
+        }
+
+        public String toJson() {
+            try {
+                JSONObject data = new JSONObject();
+                for (String field : fields) data.put(field, "");
+                return new JSONObject().put("label", label).put("data", data).toString();
+            } catch (JSONException e) {
+                e.fillInStackTrace();
+                return null;
+            }
+        }
+    }
+
+    private TemplateRegistry(Context context) {
+        this.context = context.getApplicationContext();
+        this.store = new TemplateStore(this.context);
+    }
+
+    public static synchronized TemplateRegistry getInstance(Context context) {
+        if (instance == null) instance = new TemplateRegistry(context);
+        return instance;
+    }
+
+    public synchronized String[] getNames() {
+        if (names == null) {
+            Set<String> merged = new HashSet<>(assets().keySet());
+            merged.addAll(user().keySet());
+            names = merged.toArray(new String[0]);
+        }
+        return names.clone();
+    }
+
+    public synchronized List<Template> getTemplates() {
+        ArrayList<Template> templates = new ArrayList<>(assets().values());
+        for (String name : user().keySet()) {
+            Template template = loadUser(name);
+            if (template != null) templates.add(template);
+        }
+        return templates;
+    }
+
+    public synchronized Template get(String name) {
+        Template template = loadUser(name);
+        if (template == null) template = assets().get(name);
+        if (template == null) {
+            String key = TextNormalizer.normalize(name);
+            for (Template candidate : assets().values()) {
+                if (TextNormalizer.normalize(candidate.name).equals(key)) return candidate;
+            }
+        }
+        return template;
+    }
+
+    public Template getDefault() {
+        return get(DEFAULT);
+    }
+
+    public synchronized boolean save(String name, String json) {
+        Template template = parse(name, json, false);
+        if (template == null || !store.write(name, json)) return false;
+        user().put(template.name, template);
+        names = null;
+        return true;
+    }
+
+    public synchronized void delete(String name) {
+        store.delete(name);
+        user().remove(name);
+        names = null;
+    }
+
+    private LinkedHashMap<String, Template> assets() {
+        if (assets != null) return assets;
+        assets = new LinkedHashMap<>();
+        AssetManager manager = context.getAssets();
+        try {
+            String[] files = manager.list(ASSET_DIR);
+            if (files == null) return assets;
+            for (String filename : files) {
+                String name = filename.replace(".json", "");
+                try (InputStream is = manager.open(ASSET_DIR + "/" + filename)) {
+                    Template template = parse(name, readFully(is), true);
+                    if (template != null) assets.put(template.name, template);
+                }
+            }
+        } catch (IOException e) {
+            e.fillInStackTrace();
+        }
+        return assets;
+    }
+
+    private TreeMap<String, Template> user() {
+        if (user != null) return user;
+        user = new TreeMap<>();
+        for (String name : store.getNames()) user.put(name, null);
+        return user;
+    }
+
+    private Template loadUser(String name) {
+        if (!user().containsKey(name)) return null;
+        Template template = user.get(name);
+        if (template != null) return template;
+        String json = store.read(name);
+        template = json == null ? null : parse(name, json, false);
+        if (template != null) user.put(template.name, template);
+        return template;
+    }
+
+    private static Template parse(String name, String json, boolean asset) {
+        try {
+            JSONObject template = new JSONObject(json);
+            JSONObject data = template.getJSONObject("data");
+            ArrayList<String> fields = new ArrayList<>(data.length());
+            for (Iterator<String> it = data.keys(); it.hasNext(); ) fields.add(it.next());
+            return new Template(name, template.getString("label"), fields, asset);
+        } catch (JSONException e) {
+            e.fillInStackTrace();
+            return null;
+        }
+    }
+
+    private static String readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) != -1) out.write(buffer, 0, read);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,213 @@
+package com.jahirtrap.vosk;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TemplateStore {
+    private static final int INDEX_VERSION = 1;
+    private final File dir, indexFile;
+    private final Context context;
+    private final TreeMap<String, String> files = new TreeMap<>();
+    private boolean loaded = false, broken = false;
+    private int nextId = 1;
+
+    public TemplateStore(Context context) {
+        this.context = context.getApplicationContext();
+        dir = new File(context.getFilesDir(), "templates");
+        indexFile = new File(dir, "index");
+    }
+
+    public synchronized List<String> getNames() {
+        load();
+        return new ArrayList<>(files.keySet());
+    }
+
+    public synchronized String read(String name) {
+        load();
+        String file = files.get(name);
+        if (file == null) return null;
+        try {
+            return new String(Files.readAllBytes(new File(dir, file).toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            return null;
+        }
+    }
+
+    public synchronized boolean write(String name, String json) {
+        load();
+        if (broken) return false;
+        String file = files.get(name);
+        boolean added = file == null;
+        if (added) file = String.format(Locale.ROOT, "%d.json", nextId++);
+        try {
+            writeAtomic(new File(dir, file), json.getBytes(StandardCharsets.UTF_8));
+            if (added) {
+                files.put(name, file);
+                writeIndex();
+            }
+            return true;
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            if (added) files.remove(name);
+            return false;
+        }
+    }
+
+    public synchronized void delete(String name) {
+        load();
+        if (broken) return;
+        String file = files.remove(name);
+        if (file == null) return;
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            files.put(name, file);
+            return;
+        }
+        new File(dir, file).delete();
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!indexFile.exists()) {
+            migrate();
+            return;
+        }
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (data.readInt() != INDEX_VERSION) throw new IOException("Unknown template index version");
+            nextId = data.readInt();
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = data.readUTF();
+                files.put(name, data.readUTF());
+            }
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            rebuild();
+        }
+    }
+
+    // Template files carry their own label, so a lost index can be recovered from them; until it is, nothing gets written
+    private void rebuild() {
+        files.clear();
+        nextId = 1;
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            broken = true;
+            return;
+        }
+        TreeMap<Integer, File> templates = new TreeMap<>();
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (!name.endsWith(".json")) continue;
+            try {
+                templates.put(Integer.parseInt(name.substring(0, name.length() - 5)), entry);
+            } catch (NumberFormatException e) {
+                e.fillInStackTrace();
+            }
+        }
+
+        for (Map.Entry<Integer, File> template : templates.entrySet()) {
+            nextId = Math.max(nextId, template.getKey() + 1);
+            try {
+                String json = new String(Files.readAllBytes(template.getValue().toPath()), StandardCharsets.UTF_8);
+                files.put(new JSONObject(json).getString("label"), template.getValue().getName());
+            } catch (IOException | JSONException e) {
+                e.fillInStackTrace();
+            }
+        }
+
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            broken = true;
+        }
+    }
+
+    private void migrate() {
+        if (!dir.exists() && !dir.mkdirs()) return;
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        TreeMap<String, String> templates = new TreeMap<>();
+        for (String name : preferences.getStringSet("templates", Collections.emptySet())) {
+            String json = preferences.getString(name, null);
+            if (json != null && isTemplate(json)) templates.put(name, json);
+        }
+
+        try {
+            for (Map.Entry<String, String> template : templates.entrySet()) {
+                String file = String.format(Locale.ROOT, "%d.json", nextId++);
+                writeAtomic(new File(dir, file), template.getValue().getBytes(StandardCharsets.UTF_8));
+                files.put(template.getKey(), file);
+            }
+            writeIndex();
+        } catch (IOException e) {
+            e.fillInStackTrace();
+            return;
+        }
+
+        SharedPreferences.Editor editor = preferences.edit();
+        for (String name : templates.keySet()) editor.remove(name);
+        editor.remove("templates");
+        editor.apply();
+    }
+
+    private void writeIndex() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * (files.size() + 1));
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(buffer))) {
+            data.writeInt(INDEX_VERSION);
+            data.writeInt(nextId);
+            data.writeInt(files.size());
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                data.writeUTF(entry.getKey());
+                data.writeUTF(entry.getValue());
+            }
+        }
+        writeAtomic(indexFile, buffer.toByteArray());
+    }
+
+    private void writeAtomic(File file, byte[] bytes) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Failed to create " + dir);
+        File temp = new File(dir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) throw new IOException("Failed to write " + file);
+    }
+
+    private static boolean isTemplate(String json) {
+        try {
+            new JSONObject(json).getJSONObject("data");
+            return true;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+}
@@ -1,33 +1,24 @@
 package com.jahirtrap.vosk;
 
-import android.annotation.SuppressLint;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.view.View;
 import android.widget.Button;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
-import android.widget.TextView;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.HashSet;
-import java.util.Set;
-
-@SuppressLint("MutatingSharedPrefs")
 public class TemplatesActivity extends AppCompatActivity {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private ActivityResultLauncher<Intent> addEditTemplateLauncher;
-    private LinearLayout templatesContainer;
-    private SharedPreferences sharedPreferences;
+    private TemplateListAdapter adapter;
+    private TemplateRegistry registry;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -52,12 +43,33 @@ public class TemplatesActivity extends AppCompatActivity {
             addEditTemplateLauncher.launch(intent);
         });
 
-        templatesContainer = findViewById(R.id.templates_container);
-        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        registry = TemplateRegistry.getInstance(this);
+        adapter = new TemplateListAdapter(new TemplateListAdapter.Listener() {
+            @Override
+            public void onEdit(TemplateRegistry.Template template) {
+                Intent intent = new Intent(TemplatesActivity.this, AddEditTemplateActivity.class);
+                intent.putExtra("template", template.toJson());
+                addEditTemplateLauncher.launch(intent);
+            }
+
+            @Override
+            public void onDelete(TemplateRegistry.Template template) {
+                deleteTemplate(template.getName());
+            }
+        });
+        RecyclerView templatesList = findViewById(R.id.templates_list);
+        templatesList.setLayoutManager(new LinearLayoutManager(this));
+        templatesList.setAdapter(adapter);
 
         loadTemplates();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         getOnBackPressedDispatcher().onBackPressed();
@@ -65,90 +77,16 @@ public class TemplatesActivity extends AppCompatActivity {
     }
 
     private void loadTemplates() {
-        templatesContainer.removeAllViews();
-
-        // Load templates from assets
-        try {
-            String[] files = getAssets().list("templates");
-            if (files != null) {
-                for (String filename : files) {
-                    InputStream is = getAssets().open("templates/" + filename);
-                    byte[] buffer = new byte[is.available()];
-                    is.read(buffer);
-                    is.close();
-                    String json = new String(buffer, StandardCharsets.UTF_8);
-                    JSONObject template = new JSONObject(json);
-                    addTemplateView(template, true);
-                }
-            }
-        } catch (Exception e) {
-            e.fillInStackTrace();
-        }
-
-        // Load templates from preferences
-        try {
-            Set<String> templateNames = sharedPreferences.getStringSet("templates", new HashSet<>());
-            for (String templateName : templateNames) {
-                String json = sharedPreferences.getString(templateName, null);
-                if (json != null && isValidJSONObject(json)) {
-                    JSONObject template = new JSONObject(json);
-                    addTemplateView(template, false);
-                }
-            }
-        } catch (Exception e) {
-            e.fillInStackTrace();
-        }
-    }
-
-    private boolean isValidJSONObject(String json) {
-        try {
-            new JSONObject(json);
-            return true;
-        } catch (JSONException ex) {
-            return false;
-        }
-    }
-
-    private void addTemplateView(final JSONObject template, boolean isDefault) {
-        try {
-            View templateView = getLayoutInflater().inflate(R.layout.template_item, templatesContainer, false);
-            TextView textLabel = templateView.findViewById(R.id.text_label);
-            textLabel.setText(template.getString("label"));
-            ImageView btnEdit = templateView.findViewById(R.id.btn_edit);
-            ImageView btnDelete = templateView.findViewById(R.id.btn_delete);
-
-            btnEdit.setOnClickListener(v -> {
-                Intent intent = new Intent(TemplatesActivity.this, AddEditTemplateActivity.class);
-                intent.putExtra("template", template.toString());
-                addEditTemplateLauncher.launch(intent);
+        executor.execute(() -> {
+            List<TemplateRegistry.Template> templates = registry.getTemplates();
+            runOnUiThread(() -> {
+                if (!isDestroyed()) adapter.submitList(templates);
             });
-
-            if (isDefault) {
-                btnDelete.setVisibility(View.GONE);
-            } else {
-                btnDelete.setOnClickListener(v -> {
-                    try {
-                        deleteTemplate(template.getString("label"));
-                        loadTemplates();
-                    } catch (JSONException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-            }
-
-            templatesContainer.addView(templateView);
-        } catch (Exception e) {
-            e.fillInStackTrace();
-        }
+        });
     }
 
     private void deleteTemplate(String templateName) {
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.remove(templateName);
-        Set<String> templates = sharedPreferences.getStringSet("templates", new HashSet<>());
-        templates.remove(templateName);
-        editor.putStringSet("templates", templates);
-
-        editor.apply();
+        executor.execute(() -> registry.delete(templateName));
+        loadTemplates();
     }
 }
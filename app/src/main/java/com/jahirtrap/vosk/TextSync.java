@@ -0,0 +1,64 @@
+package com.jahirtrap.vosk;
+
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+public class TextSync implements TextWatcher {
+    private final EditText editText;
+    private final OnEditListener listener;
+    private int anchor = 0;
+    private boolean applying = false;
+
+    public interface OnEditListener {
+        void onEdit(Editable text);
+    }
+
+    public TextSync(EditText editText, OnEditListener listener) {
+        this.editText = editText;
+        this.listener = listener;
+        editText.addTextChangedListener(this);
+    }
+
+    public void set(CharSequence text) {
+        anchor = 0;
+        applying = true;
+        try {
+            editText.setText(text);
+        } finally {
+            applying = false;
+        }
+    }
+
+    public void apply(CharSequence text, int stablePrefix) {
+        Editable editable = editText.getText();
+        int length = editable.length(), newLength = text.length();
+        int max = Math.min(length, newLength);
+        int start = Math.min(Math.min(anchor, stablePrefix), max);
+        while (start < max && editable.charAt(start) == text.charAt(start)) start++;
+        anchor = Math.min(stablePrefix, newLength);
+        if (start == length && start == newLength) return;
+
+        applying = true;
+        try {
+            editable.replace(start, length, text, start, newLength);
+        } finally {
+            applying = false;
+        }
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (applying) return;
+        anchor = 0;
+        if (listener != null) listener.onEdit(s);
+    }
+}
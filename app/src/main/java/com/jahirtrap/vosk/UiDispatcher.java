@@ -0,0 +1,131 @@
+package com.jahirtrap.vosk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UiDispatcher implements Choreographer.FrameCallback {
+    private static final String TAG = "UiDispatcher";
+    private static final int LEVEL_QUEUE_SIZE = 64, MAX_LEVELS_PER_FRAME = 8;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameRequested = new AtomicBoolean(false);
+    private final Runnable postFrame = () -> Choreographer.getInstance().postFrameCallback(this);
+    private final float[] levels = new float[LEVEL_QUEUE_SIZE], batch = new float[MAX_LEVELS_PER_FRAME];
+    private final Target target;
+    private volatile int levelWrite = 0;
+    private int levelRead = 0;
+    private String[] pendingText = new String[0];
+    private boolean focusPending = false;
+    private int focusedSlot = -1;
+    private long frames = 0, droppedLevels = 0, mergedLevels = 0, postedTexts = 0, mergedTexts = 0;
+
+    public interface Target {
+        void onLevels(float[] amplitudes, int count);
+
+        void onText(int slot, String text);
+
+        void onFocus();
+    }
+
+    public UiDispatcher(Target target) {
+        this.target = target;
+    }
+
+    public void postLevel(float amplitude) {
+        int index = levelWrite;
+        levels[index & (LEVEL_QUEUE_SIZE - 1)] = amplitude;
+        levelWrite = index + 1;
+        requestFrame();
+    }
+
+    public void postText(int slot, String text) {
+        if (slot < 0 || slot >= pendingText.length) return;
+        postedTexts++;
+        if (pendingText[slot] != null) mergedTexts++;
+        pendingText[slot] = text;
+        requestFrame();
+    }
+
+    // Moving focus restarts the caret and IME state, so it only happens when the target slot changes
+    public void postFocus(int slot) {
+        if (slot == focusedSlot) return;
+        focusedSlot = slot;
+        focusPending = true;
+        requestFrame();
+    }
+
+    public void setSlots(int size) {
+        pendingText = new String[size];
+        focusedSlot = -1;
+    }
+
+    public void clearText() {
+        Arrays.fill(pendingText, null);
+        focusPending = false;
+        focusedSlot = -1;
+    }
+
+    public void cancel() {
+        mainHandler.removeCallbacks(postFrame);
+        Choreographer.getInstance().removeFrameCallback(this);
+        frameRequested.set(false);
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getDroppedLevels() {
+        return droppedLevels;
+    }
+
+    public long getMergedLevels() {
+        return mergedLevels;
+    }
+
+    public long getMergedTexts() {
+        return mergedTexts;
+    }
+
+    public void logCounters() {
+        Log.d(TAG, "Frames: " + frames + ", levels merged/dropped: " + mergedLevels + "/" + droppedLevels
+                + ", texts posted/merged: " + postedTexts + "/" + mergedTexts);
+    }
+
+    private void requestFrame() {
+        if (!frameRequested.compareAndSet(false, true)) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) postFrame.run();
+        else mainHandler.post(postFrame);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameRequested.set(false);
+        frames++;
+
+        int end = levelWrite;
+        if (end - levelRead > MAX_LEVELS_PER_FRAME) {
+            droppedLevels += end - levelRead - MAX_LEVELS_PER_FRAME;
+            levelRead = end - MAX_LEVELS_PER_FRAME;
+        }
+        int count = end - levelRead;
+        if (count > 1) mergedLevels += count - 1;
+        for (int i = 0; i < count; i++) batch[i] = levels[levelRead++ & (LEVEL_QUEUE_SIZE - 1)];
+        if (count > 0) target.onLevels(batch, count);
+
+        for (int slot = 0; slot < pendingText.length; slot++) {
+            if (pendingText[slot] == null) continue;
+            target.onText(slot, pendingText[slot]);
+            pendingText[slot] = null;
+        }
+
+        if (focusPending) {
+            focusPending = false;
+            target.onFocus();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.jahirtrap.vosk;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+public class VoiceGate implements AudioCaptureEngine.Consumer {
+    private static final String TAG = "VoiceGate";
+    private static final int WINDOW_SIZE = AudioCaptureEngine.SAMPLE_RATE / 50, PREROLL_SIZE = AudioCaptureEngine.SAMPLE_RATE * 3 / 10;
+    private volatile AudioCaptureEngine.Consumer[] targets;
+    private final short[] preroll = new short[PREROLL_SIZE], flush = new short[PREROLL_SIZE];
+    private final float threshold;
+    private final int hangoverSamples;
+    private int prerollIndex = 0, prerollCount = 0, silentSamples;
+    private long passedSamples = 0, skippedSamples = 0;
+
+    public VoiceGate(float threshold, int hangoverMs, AudioCaptureEngine.Consumer... targets) {
+        this.threshold = threshold;
+        this.hangoverSamples = AudioCaptureEngine.SAMPLE_RATE / 1000 * hangoverMs;
+        this.targets = targets;
+        this.silentSamples = hangoverSamples;
+    }
+
+    // Targets attached mid-capture must already be started; the capture thread picks them up on its next buffer
+    public synchronized void addTarget(AudioCaptureEngine.Consumer target) {
+        AudioCaptureEngine.Consumer[] next = Arrays.copyOf(targets, targets.length + 1);
+        next[targets.length] = target;
+        targets = next;
+    }
+
+    @Override
+    public void onStart() {
+        for (AudioCaptureEngine.Consumer target : targets) target.onStart();
+    }
+
+    @Override
+    public void onAudio(short[] buffer, int read) {
+        boolean voiced = false;
+        for (int offset = 0; offset < read && !voiced; offset += WINDOW_SIZE) {
+            voiced = LevelMeter.calculateAmplitude(buffer, offset, Math.min(WINDOW_SIZE, read - offset)) >= threshold;
+        }
+
+        boolean open = silentSamples < hangoverSamples;
+        if (voiced) {
+            if (!open) flushPreroll();
+            silentSamples = 0;
+        } else if (open) {
+            silentSamples += read;
+        } else {
+            storePreroll(buffer, read);
+            skippedSamples += read;
+            return;
+        }
+
+        passedSamples += read;
+        for (AudioCaptureEngine.Consumer target : targets) target.onAudio(buffer, read);
+    }
+
+    @Override
+    public void onStop() {
+        Log.d(TAG, "Passed " + passedSamples / AudioCaptureEngine.SAMPLE_RATE + " s, skipped " + skippedSamples / AudioCaptureEngine.SAMPLE_RATE + " s");
+        for (AudioCaptureEngine.Consumer target : targets) target.onStop();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        for (AudioCaptureEngine.Consumer target : targets) target.onError(e);
+    }
+
+    private void storePreroll(short[] buffer, int read) {
+        int offset = Math.max(0, read - PREROLL_SIZE);
+        for (int i = offset; i < read; i++) {
+            preroll[prerollIndex] = buffer[i];
+            prerollIndex = (prerollIndex + 1) % PREROLL_SIZE;
+        }
+        prerollCount = Math.min(PREROLL_SIZE, prerollCount + read - offset);
+    }
+
+    private void flushPreroll() {
+        if (prerollCount == 0) return;
+        int start = (prerollIndex - prerollCount + PREROLL_SIZE) % PREROLL_SIZE;
+        for (int i = 0; i < prerollCount; i++) flush[i] = preroll[(start + i) % PREROLL_SIZE];
+        for (AudioCaptureEngine.Consumer target : targets) target.onAudio(flush, prerollCount);
+        passedSamples += prerollCount;
+        skippedSamples -= prerollCount;
+        prerollCount = 0;
+    }
+}
@@ -0,0 +1,125 @@
+package com.jahirtrap.vosk;
+
+public class FieldIndex {
+    // One edit per CHARS_PER_EDIT query characters, so a fuzzy match is always at least 75% similar
+    private static final int MAX_DISTANCE = 3, CHARS_PER_EDIT = 4, MIN_PREFIX = 3, AMBIGUOUS = -2;
+    private final Node root = new Node();
+    private final StringBuilder query = new StringBuilder(64);
+    private int[][] rows = new int[1][32];
+    private int maxDepth = 0, bestSlot, bestDistance;
+
+    private static class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private int slot = -1, prefixSlot = -1;
+
+        private Node child(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        private Node addChild(char c) {
+            Node node = child(c);
+            if (node != null) return node;
+            int size = labels.length;
+            char[] newLabels = new char[size + 1];
+            Node[] newChildren = new Node[size + 1];
+            System.arraycopy(labels, 0, newLabels, 0, size);
+            System.arraycopy(children, 0, newChildren, 0, size);
+            newLabels[size] = c;
+            newChildren[size] = node = new Node();
+            labels = newLabels;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    public FieldIndex(String[] names) {
+        StringBuilder key = new StringBuilder(64);
+        for (int slot = 0; slot < names.length; slot++) {
+            key.setLength(0);
+            tokenize(names[slot], key);
+            add(key, slot);
+        }
+    }
+
+    public int find(CharSequence name) {
+        query.setLength(0);
+        tokenize(name, query);
+        int length = query.length();
+        if (length == 0) return -1;
+
+        Node node = root;
+        for (int i = 0; i < length && node != null; i++) node = node.child(query.charAt(i));
+        if (node != null && node.slot >= 0) return node.slot;
+        if (node != null && node.prefixSlot >= 0 && length >= MIN_PREFIX) return node.prefixSlot;
+
+        int maxDistance = Math.min(MAX_DISTANCE, length / CHARS_PER_EDIT);
+        if (maxDistance == 0) return -1;
+        if (rows.length <= maxDepth || rows[0].length <= length) {
+            rows = new int[maxDepth + 1][Math.max(length + 1, 32)];
+        }
+        int[] first = rows[0];
+        for (int j = 0; j <= length; j++) first[j] = j;
+        bestSlot = -1;
+        bestDistance = maxDistance + 1;
+        search(root, 1, length, maxDistance);
+        return Math.max(bestSlot, -1);
+    }
+
+    private void search(Node node, int depth, int length, int maxDistance) {
+        int[] previous = rows[depth - 1], row = rows[depth];
+        for (int c = 0; c < node.labels.length; c++) {
+            char label = node.labels[c];
+            row[0] = depth;
+            int min = row[0];
+            for (int j = 1; j <= length; j++) {
+                int cost = query.charAt(j - 1) == label ? 0 : 1;
+                int value = Math.min(Math.min(row[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+                row[j] = value;
+                if (value < min) min = value;
+            }
+            if (min > maxDistance) continue;
+
+            Node child = node.children[c];
+            int distance = row[length];
+            if (child.slot >= 0 && distance <= maxDistance) {
+                if (distance < bestDistance) {
+                    bestSlot = child.slot;
+                    bestDistance = distance;
+                } else if (distance == bestDistance && child.slot != bestSlot) {
+                    bestSlot = AMBIGUOUS;
+                }
+            }
+            if (depth < maxDepth) search(child, depth + 1, length, maxDistance);
+        }
+    }
+
+    private void add(CharSequence key, int slot) {
+        if (key.length() == 0) return;
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.addChild(key.charAt(i));
+            if (node.prefixSlot == -1) node.prefixSlot = slot;
+            else if (node.prefixSlot != slot) node.prefixSlot = AMBIGUOUS;
+        }
+        if (node.slot == -1) node.slot = slot;
+        maxDepth = Math.max(maxDepth, key.length());
+    }
+
+    private static void tokenize(CharSequence text, StringBuilder out) {
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = TextNormalizer.fold(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (space && out.length() > 0) out.append(' ');
+                out.append(c);
+                space = false;
+            } else if (c != 0) {
+                space = true;
+            }
+        }
+    }
+}
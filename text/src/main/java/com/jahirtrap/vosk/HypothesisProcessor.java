@@ -0,0 +1,108 @@
+package com.jahirtrap.vosk;
+
+public class HypothesisProcessor {
+    public static final int NONE = 0, TEXT = 1, COMMAND = 2;
+    private final StringBuilder raw = new StringBuilder(256), previous = new StringBuilder(256);
+    private final StringBuilder normalized = new StringBuilder(256), command = new StringBuilder(32);
+    private final String quotedKey;
+    private final boolean skipRepeats;
+
+    public HypothesisProcessor(String key, boolean skipRepeats) {
+        this.quotedKey = "\"" + key + "\"";
+        this.skipRepeats = skipRepeats;
+    }
+
+    public void setLineCommand(String lineCommand) {
+        command.setLength(0);
+        TextNormalizer.fold(lineCommand, command);
+    }
+
+    public int process(String hypothesis) {
+        raw.setLength(0);
+        if (!readString(hypothesis, quotedKey, raw)) return NONE;
+        if (skipRepeats) {
+            if (TextNormalizer.contentEquals(raw, previous)) return NONE;
+            previous.setLength(0);
+            previous.append(raw);
+        }
+
+        normalized.setLength(0);
+        TextNormalizer.fold(raw, normalized);
+        if (normalized.length() == 0) return NONE;
+        if (command.length() > 0 && TextNormalizer.startsWith(normalized, command)) return COMMAND;
+        return TEXT;
+    }
+
+    public CharSequence getRawText() {
+        return raw;
+    }
+
+    public CharSequence getText() {
+        return normalized;
+    }
+
+    public String getLineName() {
+        int start = command.length();
+        while (start < normalized.length() && normalized.charAt(start) == ' ') start++;
+        return normalized.substring(start);
+    }
+
+    public void reset() {
+        previous.setLength(0);
+    }
+
+    static boolean readString(String json, String quotedKey, StringBuilder out) {
+        int i = json.indexOf(quotedKey);
+        if (i == -1) return false;
+        i = skipWhitespace(json, i + quotedKey.length());
+        if (i >= json.length() || json.charAt(i) != ':') return false;
+        i = skipWhitespace(json, i + 1);
+        if (i >= json.length() || json.charAt(i) != '"') return false;
+
+        for (i++; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '"') return true;
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (++i >= json.length()) return false;
+            c = json.charAt(i);
+            switch (c) {
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 >= json.length()) return false;
+                    int code = 0;
+                    for (int end = i + 4; i < end; ) {
+                        int digit = Character.digit(json.charAt(++i), 16);
+                        if (digit == -1) return false;
+                        code = (code << 4) | digit;
+                    }
+                    out.append((char) code);
+                    break;
+                default:
+                    out.append(c);
+            }
+        }
+        return false;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && json.charAt(i) <= ' ') i++;
+        return i;
+    }
+}
@@ -0,0 +1,280 @@
+package com.jahirtrap.vosk;
+
+public class SpanishNumberParser {
+    private static final int NONE = 0, CARDINAL = 1, MULTIPLIER = 2, NEGATIVE = 3, AND = 4, DECIMAL = 5, ORDINAL = 6, UNIT = 7, ARTICLE = 8;
+    private static final String[] UNITS = {" m", " cm", " mm", " km", "°", "%"};
+    private static final int UNIT_M = 0, UNIT_CM = 1, UNIT_MM = 2, UNIT_KM = 3, UNIT_DEGREE = 4, UNIT_PERCENT = 5;
+    private static final int MAX_NODES = 1024;
+    private static final char[] LABEL = new char[MAX_NODES];
+    private static final int[] CHILD = new int[MAX_NODES], SIBLING = new int[MAX_NODES], KIND = new int[MAX_NODES], VALUE = new int[MAX_NODES];
+    private static int nodeCount = 1;
+
+    static {
+        String[] units = {"cero", "uno", "dos", "tres", "cuatro", "cinco", "seis", "siete", "ocho", "nueve",
+                "diez", "once", "doce", "trece", "catorce", "quince", "dieciseis", "diecisiete", "dieciocho", "diecinueve",
+                "veinte", "veintiuno", "veintidos", "veintitres", "veinticuatro", "veinticinco", "veintiseis", "veintisiete", "veintiocho", "veintinueve"};
+        for (int i = 0; i < units.length; i++) add(units[i], CARDINAL, i);
+        add("veintiun", CARDINAL, 21);
+        add("veintiuna", CARDINAL, 21);
+
+        String[] tens = {"treinta", "cuarenta", "cincuenta", "sesenta", "setenta", "ochenta", "noventa"};
+        for (int i = 0; i < tens.length; i++) add(tens[i], CARDINAL, (i + 3) * 10);
+
+        add("cien", CARDINAL, 100);
+        add("ciento", CARDINAL, 100);
+        String[] hundreds = {"doscient", "trescient", "cuatrocient", "quinient", "seiscient", "setecient", "ochocient", "novecient"};
+        int[] hundredValues = {200, 300, 400, 500, 600, 700, 800, 900};
+        for (int i = 0; i < hundreds.length; i++) {
+            add(hundreds[i] + "os", CARDINAL, hundredValues[i]);
+            add(hundreds[i] + "as", CARDINAL, hundredValues[i]);
+        }
+
+        add("un", ARTICLE, 1);
+        add("una", ARTICLE, 1);
+        add("mil", MULTIPLIER, 1000);
+        add("millon", MULTIPLIER, 1000000);
+        add("millones", MULTIPLIER, 1000000);
+
+        add("menos", NEGATIVE, 0);
+        add("y", AND, 0);
+        add("coma", DECIMAL, ',');
+        add("punto", DECIMAL, '.');
+
+        String[] ordinals = {"primer", "segund", "tercer", "cuart", "quint", "sext", "septim", "octav", "noven", "decim"};
+        for (int i = 0; i < ordinals.length; i++) {
+            add(ordinals[i] + "o", ORDINAL, i + 1);
+            add(ordinals[i] + "a", ORDINAL, i + 1);
+        }
+        add("primer", ORDINAL, 1);
+        add("tercer", ORDINAL, 3);
+
+        add("metro", UNIT, UNIT_M);
+        add("metros", UNIT, UNIT_M);
+        add("centimetro", UNIT, UNIT_CM);
+        add("centimetros", UNIT, UNIT_CM);
+        add("milimetro", UNIT, UNIT_MM);
+        add("milimetros", UNIT, UNIT_MM);
+        add("kilometro", UNIT, UNIT_KM);
+        add("kilometros", UNIT, UNIT_KM);
+        add("grado", UNIT, UNIT_DEGREE);
+        add("grados", UNIT, UNIT_DEGREE);
+        add("porciento", UNIT, UNIT_PERCENT);
+    }
+
+    private boolean inNumber, inFraction, negative;
+    private long integerPart, total, current;
+    private int lastPlace, leadingZeros;
+    private char decimalSeparator;
+
+    private static void add(String word, int kind, int value) {
+        int node = 0;
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            int child = CHILD[node];
+            while (child != 0 && LABEL[child] != c) child = SIBLING[child];
+            if (child == 0) {
+                child = nodeCount++;
+                LABEL[child] = c;
+                SIBLING[child] = CHILD[node];
+                CHILD[node] = child;
+            }
+            node = child;
+        }
+        KIND[node] = kind;
+        VALUE[node] = value;
+    }
+
+    private static int lookup(CharSequence text, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end && node != -1; i++) {
+            char c = TextNormalizer.fold(text.charAt(i));
+            if (c == 0) continue;
+            int child = CHILD[node];
+            while (child != 0 && LABEL[child] != c) child = SIBLING[child];
+            node = child == 0 ? -1 : child;
+        }
+        return node;
+    }
+
+    private static int kindOf(int node) {
+        return node <= 0 ? NONE : KIND[node];
+    }
+
+    public String textToNumber(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length() + 8);
+        parse(text, out);
+        return out.toString();
+    }
+
+    public void parse(CharSequence text, StringBuilder out) {
+        int origin = out.length();
+        int length = text.length();
+        resetNumber();
+
+        int pos = skipSpaces(text, 0), previousKind = NONE;
+        while (pos < length) {
+            int end = tokenEnd(text, pos);
+            int node = lookup(text, pos, end);
+            int kind = kindOf(node);
+            int next = skipSpaces(text, end);
+            int nextNode = next < length ? lookup(text, next, tokenEnd(text, next)) : -1;
+            int nextKind = kindOf(nextNode);
+
+            switch (kind) {
+                case CARDINAL:
+                    addCardinal(VALUE[node], out, origin);
+                    break;
+                case MULTIPLIER:
+                    addMultiplier(VALUE[node]);
+                    break;
+                case ARTICLE:
+                    if (nextKind == MULTIPLIER) addCardinal(VALUE[node], out, origin);
+                    else appendWord(text, pos, end, out, origin);
+                    break;
+                case NEGATIVE:
+                    if (nextKind == CARDINAL || nextKind == MULTIPLIER) {
+                        flush(out, origin);
+                        negative = true;
+                    } else {
+                        appendWord(text, pos, end, out, origin);
+                    }
+                    break;
+                case AND:
+                    if (!inNumber || nextKind != CARDINAL || VALUE[nextNode] >= lastPlace)
+                        appendWord(text, pos, end, out, origin);
+                    break;
+                case DECIMAL:
+                    if (inNumber && !inFraction && nextKind == CARDINAL) {
+                        integerPart = total + current;
+                        total = current = 0;
+                        lastPlace = Integer.MAX_VALUE;
+                        leadingZeros = 0;
+                        inFraction = true;
+                        decimalSeparator = (char) VALUE[node];
+                    } else {
+                        appendWord(text, pos, end, out, origin);
+                    }
+                    break;
+                case ORDINAL:
+                    // "un segundo", "tres y cuarto" are a unit of time, not an ordinal
+                    if (inNumber || previousKind == ARTICLE || previousKind == AND) {
+                        appendWord(text, pos, end, out, origin);
+                    } else {
+                        separate(out, origin);
+                        out.append(VALUE[node]).append(isFeminine(text, end) ? 'ª' : 'º');
+                    }
+                    break;
+                case UNIT:
+                    if (inNumber) {
+                        flush(out, origin);
+                        out.append(UNITS[VALUE[node]]);
+                    } else {
+                        appendWord(text, pos, end, out, origin);
+                    }
+                    break;
+                default:
+                    if (inNumber && isPercentWords(text, pos, end, next, length)) {
+                        flush(out, origin);
+                        out.append(UNITS[UNIT_PERCENT]);
+                        end = tokenEnd(text, next);
+                    } else {
+                        appendWord(text, pos, end, out, origin);
+                    }
+            }
+            previousKind = kind;
+            pos = skipSpaces(text, end);
+        }
+        flush(out, origin);
+    }
+
+    private void addCardinal(int value, StringBuilder out, int origin) {
+        if (inFraction && total == 0 && current == 0 && value == 0) {
+            leadingZeros++;
+            return;
+        }
+        if (inNumber && !(value < lastPlace)) flush(out, origin);
+
+        inNumber = true;
+        current += value;
+        lastPlace = value >= 100 ? 100 : value >= 30 && value % 10 == 0 ? 10 : 1;
+        if (value == 0) lastPlace = 0;
+    }
+
+    private void addMultiplier(int value) {
+        if (current == 0 && total > 0 && value > total) {
+            total *= value;
+        } else {
+            total += (current == 0 ? 1 : current) * (long) value;
+        }
+        current = 0;
+        inNumber = true;
+        lastPlace = value;
+    }
+
+    private void flush(StringBuilder out, int origin) {
+        if (!inNumber) {
+            if (negative) {
+                separate(out, origin);
+                out.append("menos");
+                negative = false;
+            }
+            return;
+        }
+
+        separate(out, origin);
+        if (negative) out.append('-');
+        if (inFraction) {
+            out.append(integerPart).append(decimalSeparator);
+            for (int i = 0; i < leadingZeros; i++) out.append('0');
+            if (total + current > 0 || leadingZeros == 0) out.append(total + current);
+        } else {
+            out.append(total + current);
+        }
+        resetNumber();
+    }
+
+    private void resetNumber() {
+        inNumber = inFraction = negative = false;
+        integerPart = total = current = 0;
+        lastPlace = Integer.MAX_VALUE;
+        leadingZeros = 0;
+    }
+
+    private void appendWord(CharSequence text, int start, int end, StringBuilder out, int origin) {
+        flush(out, origin);
+        separate(out, origin);
+        out.append(text, start, end);
+    }
+
+    private static void separate(StringBuilder out, int origin) {
+        if (out.length() > origin && out.charAt(out.length() - 1) != ' ') out.append(' ');
+    }
+
+    private static boolean isFeminine(CharSequence text, int end) {
+        return TextNormalizer.fold(text.charAt(end - 1)) == 'a';
+    }
+
+    private static boolean isPercentWords(CharSequence text, int start, int end, int next, int length) {
+        if (end - start != 3 || next >= length) return false;
+        int nextEnd = tokenEnd(text, next);
+        return lookupWord(text, start, end, "por") && lookupWord(text, next, nextEnd, "ciento");
+    }
+
+    private static boolean lookupWord(CharSequence text, int start, int end, String word) {
+        if (end - start != word.length()) return false;
+        for (int i = 0; i < word.length(); i++) {
+            if (TextNormalizer.fold(text.charAt(start + i)) != word.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int skipSpaces(CharSequence text, int pos) {
+        while (pos < text.length() && text.charAt(pos) <= ' ') pos++;
+        return pos;
+    }
+
+    private static int tokenEnd(CharSequence text, int pos) {
+        while (pos < text.length() && text.charAt(pos) > ' ') pos++;
+        return pos;
+    }
+}
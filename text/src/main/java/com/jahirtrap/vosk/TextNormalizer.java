@@ -0,0 +1,58 @@
+package com.jahirtrap.vosk;
+
+import java.text.Normalizer;
+
+public final class TextNormalizer {
+    private static final int TABLE_SIZE = 0x0370;
+    private static final char DROP = 0;
+    private static final char[] FOLD = new char[TABLE_SIZE];
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            if (c >= 0x0300) {
+                FOLD[c] = DROP;
+                continue;
+            }
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            FOLD[c] = Character.toLowerCase(decomposed.charAt(0));
+        }
+    }
+
+    private TextNormalizer() {
+    }
+
+    public static char fold(char c) {
+        return c < TABLE_SIZE ? FOLD[c] : Character.toLowerCase(c);
+    }
+
+    public static void fold(CharSequence text, int start, int end, StringBuilder out) {
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        for (int i = start; i < end; i++) {
+            char c = fold(text.charAt(i));
+            if (c != DROP) out.append(c);
+        }
+    }
+
+    public static void fold(CharSequence text, StringBuilder out) {
+        fold(text, 0, text.length(), out);
+    }
+
+    public static String normalize(CharSequence text) {
+        StringBuilder out = new StringBuilder(text.length());
+        fold(text, out);
+        return out.toString();
+    }
+
+    public static boolean startsWith(CharSequence text, CharSequence prefix) {
+        if (prefix.length() > text.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public static boolean contentEquals(CharSequence a, CharSequence b) {
+        return a.length() == b.length() && startsWith(a, b);
+    }
+}
@@ -0,0 +1,152 @@
+package com.jahirtrap.vosk;
+
+import java.util.Arrays;
+
+public class WordTimings {
+    private final StringBuilder words = new StringBuilder(256);
+    private final StringBuilder key = new StringBuilder(8), word = new StringBuilder(32);
+    private int[] wordEnds = new int[16];
+    private float[] starts = new float[16], ends = new float[16], confidences = new float[16];
+    private int size = 0;
+    private long epoch = 0;
+
+    public int size() {
+        return size;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public String getWord(int index) {
+        return words.substring(index == 0 ? 0 : wordEnds[index - 1], wordEnds[index]);
+    }
+
+    public float getStart(int index) {
+        return starts[index];
+    }
+
+    public float getEnd(int index) {
+        return ends[index];
+    }
+
+    public float getConfidence(int index) {
+        return confidences[index];
+    }
+
+    public int findWordAt(float time) {
+        int index = Arrays.binarySearch(starts, 0, size, time);
+        return index >= 0 ? index : Math.max(-index - 2, -1);
+    }
+
+    public void add(CharSequence word, float start, float end, float confidence) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            wordEnds = Arrays.copyOf(wordEnds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            confidences = Arrays.copyOf(confidences, capacity);
+        }
+        if (size > 0) start = Math.max(start, starts[size - 1]);
+        words.append(word);
+        wordEnds[size] = words.length();
+        starts[size] = start;
+        ends[size] = Math.max(end, start);
+        confidences[size] = confidence;
+        size++;
+    }
+
+    public void clear() {
+        words.setLength(0);
+        size = 0;
+        epoch = 0;
+    }
+
+    public int parse(String json, long origin) {
+        int i = json.indexOf("\"result\"");
+        if (i == -1) return 0;
+        i = json.indexOf('[', i);
+        if (i == -1) return 0;
+        if (size == 0) epoch = origin;
+        float offset = (origin - epoch) / 1000f;
+
+        int added = 0;
+        while (true) {
+            i = json.indexOf('{', i);
+            if (i == -1) break;
+            int close = json.indexOf('}', i);
+            if (close == -1) break;
+            float start = 0, end = 0, confidence = 1;
+            word.setLength(0);
+            i++;
+            while (i < close) {
+                i = json.indexOf('"', i);
+                if (i == -1 || i > close) break;
+                key.setLength(0);
+                i = readString(json, i, key);
+                i = json.indexOf(':', i) + 1;
+                while (json.charAt(i) <= ' ') i++;
+                if (json.charAt(i) == '"') {
+                    i = readString(json, i, word);
+                    close = json.indexOf('}', i);
+                } else {
+                    int valueEnd = i;
+                    while (valueEnd < close && json.charAt(valueEnd) != ',' && json.charAt(valueEnd) > ' ') valueEnd++;
+                    float value = parseFloat(json, i, valueEnd);
+                    if (contentEquals(key, "start")) start = value;
+                    else if (contentEquals(key, "end")) end = value;
+                    else if (contentEquals(key, "conf")) confidence = value;
+                    i = valueEnd;
+                }
+            }
+            add(word, start + offset, end + offset, confidence);
+            added++;
+            i = close + 1;
+        }
+        return added;
+    }
+
+    static float parseFloat(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative || (i < end && text.charAt(i) == '+')) i++;
+        double value = 0, scale = 1;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (fraction) scale *= 10;
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            int exponent = (int) parseFloat(text, i + 1, end);
+            value *= Math.pow(10, exponent);
+        }
+        value /= scale;
+        return (float) (negative ? -value : value);
+    }
+
+    private static int readString(String json, int quote, StringBuilder out) {
+        int i = quote + 1;
+        while (i < json.length()) {
+            char c = json.charAt(i++);
+            if (c == '"') break;
+            if (c == '\\' && i < json.length()) c = json.charAt(i++);
+            out.append(c);
+        }
+        return i;
+    }
+
+    private static boolean contentEquals(StringBuilder value, String text) {
+        if (value.length() != text.length()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (value.charAt(i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,49 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FieldIndexTest {
+    private final FieldIndex index = new FieldIndex(new String[]{"Roca", "Mineralización", "Color", "Textura",
+            "Tamaño de grano", "Profundidad inicial", "Profundidad final"});
+
+    @Test
+    public void exactNames() {
+        assertEquals(0, index.find("roca"));
+        assertEquals(2, index.find("Color"));
+        assertEquals(6, index.find("profundidad final"));
+        assertEquals(-1, index.find(""));
+    }
+
+    @Test
+    public void foldsAccentsCaseAndPunctuation() {
+        assertEquals(1, index.find("mineralizacion"));
+        assertEquals(4, index.find("TAMANO DE GRANO"));
+        assertEquals(4, index.find("tamaño, de   grano"));
+    }
+
+    @Test
+    public void uniquePrefixes() {
+        assertEquals(3, index.find("textu"));
+        assertEquals(1, index.find("mineral"));
+        assertEquals(-1, index.find("te"));
+        assertEquals(-1, index.find("profundidad"));
+    }
+
+    @Test
+    public void toleratesOneEditPerFourCharacters() {
+        assertEquals(1, index.find("minerelizacion"));
+        assertEquals(3, index.find("textira"));
+        assertEquals(5, index.find("profundida inicil"));
+        assertEquals(2, index.find("colar"));
+    }
+
+    @Test
+    public void rejectsMatchesBelowThreshold() {
+        assertEquals(-1, index.find("valor"));
+        assertEquals(-1, index.find("rico"));
+        assertEquals(-1, index.find("texto"));
+        assertEquals(-1, index.find("profundidad medial"));
+    }
+}
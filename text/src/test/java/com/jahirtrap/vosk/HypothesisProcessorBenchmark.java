@@ -0,0 +1,68 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+public class HypothesisProcessorBenchmark {
+    private static final int WARMUP = 50_000, ITERATIONS = 200_000;
+    private static final String[] PARTIALS = {
+            "{\n  \"partial\" : \"\"\n}",
+            "{\n  \"partial\" : \"número\"\n}",
+            "{\n  \"partial\" : \"número de afloramiento\"\n}",
+            "{\n  \"partial\" : \"número de afloramiento veintitrés\"\n}",
+            "{\n  \"partial\" : \"línea descripción\"\n}",
+            "{\n  \"partial\" : \"línea descripción roca ígnea con \\\"cuarzo\\\"\"\n}"
+    };
+
+    @Test
+    public void processesPartialsWithoutAllocating() {
+        HypothesisProcessor processor = new HypothesisProcessor("partial", false);
+        processor.setLineCommand("Línea");
+        assertEquals(HypothesisProcessor.TEXT, processor.process(PARTIALS[3]));
+        assertEquals("numero de afloramiento veintitres", processor.getText().toString());
+        assertEquals(HypothesisProcessor.COMMAND, processor.process(PARTIALS[5]));
+
+        double bytes = allocatedPerCall(processor);
+        report("process", bytes);
+        if (bytes >= 0) assertTrue("process allocated " + bytes + " bytes per call", bytes < 1);
+    }
+
+    @Test
+    public void dropsRepeatedPartialsWithoutAllocating() {
+        HypothesisProcessor processor = new HypothesisProcessor("partial", true);
+        processor.setLineCommand("línea");
+        assertEquals(HypothesisProcessor.TEXT, processor.process(PARTIALS[2]));
+        assertEquals(HypothesisProcessor.NONE, processor.process(PARTIALS[2]));
+
+        double bytes = allocatedPerCall(processor);
+        report("process (repeats)", bytes);
+        if (bytes >= 0) assertTrue("process allocated " + bytes + " bytes per call", bytes < 1);
+    }
+
+    private static double allocatedPerCall(HypothesisProcessor processor) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return -1;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) sink += processor.process(PARTIALS[i % PARTIALS.length]);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) sink += processor.process(PARTIALS[i % PARTIALS.length]);
+        long after = threads.getThreadAllocatedBytes(thread);
+        assertTrue(sink >= 0);
+        return (double) (after - before) / ITERATIONS;
+    }
+
+    private static void report(String name, double bytes) {
+        if (bytes < 0) System.out.println(name + ": allocation counter unavailable");
+        else System.out.println(String.format(Locale.ROOT, "%s: %.3f bytes/call over %d calls", name, bytes, ITERATIONS));
+    }
+}
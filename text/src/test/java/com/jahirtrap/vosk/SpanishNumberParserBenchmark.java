@@ -0,0 +1,85 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+public class SpanishNumberParserBenchmark {
+    private static final int WARMUP = 50_000, ITERATIONS = 200_000;
+    private static final String[] PHRASES = {
+            "treinta y dos",
+            "ciento cuarenta y cinco metros",
+            "dos coma cinco grados",
+            "rumbo cuarenta y cinco grados buzamiento sesenta",
+            "dos mil quinientos veintitrés",
+            "roca ígnea con cuarzo y feldespato"
+    };
+
+    @Test
+    public void parsesIntoReusedBufferWithoutAllocating() {
+        SpanishNumberParser parser = new SpanishNumberParser();
+        StringBuilder out = new StringBuilder(128);
+        parser.parse(PHRASES[0], out);
+        assertEquals("32", out.toString());
+
+        double bytes = allocatedPerCall(parser, out);
+        report("parse", bytes);
+        if (bytes >= 0) assertTrue("parse allocated " + bytes + " bytes per call", bytes < 1);
+    }
+
+    @Test
+    public void scalesLinearlyWithInputLength() {
+        SpanishNumberParser parser = new SpanishNumberParser();
+        StringBuilder shortText = new StringBuilder(), longText = new StringBuilder();
+        for (String phrase : PHRASES) shortText.append(phrase).append(' ');
+        for (int i = 0; i < 64; i++) longText.append(shortText);
+        StringBuilder out = new StringBuilder(longText.length() * 2);
+
+        double shortNanos = nanosPerCall(parser, shortText, out, ITERATIONS / 10);
+        double longNanos = nanosPerCall(parser, longText, out, ITERATIONS / 640);
+        System.out.println(String.format(Locale.ROOT, "parse: %.0f ns for %d chars, %.0f ns for %d chars (%.1fx)",
+                shortNanos, shortText.length(), longNanos, longText.length(), longNanos / shortNanos));
+    }
+
+    private static double allocatedPerCall(SpanishNumberParser parser, StringBuilder out) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return -1;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) sink += parse(parser, PHRASES[i % PHRASES.length], out);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) sink += parse(parser, PHRASES[i % PHRASES.length], out);
+        long after = threads.getThreadAllocatedBytes(thread);
+        assertTrue(sink >= 0);
+        return (double) (after - before) / ITERATIONS;
+    }
+
+    private static double nanosPerCall(SpanishNumberParser parser, CharSequence text, StringBuilder out, int iterations) {
+        int sink = 0;
+        for (int i = 0; i < iterations; i++) sink += parse(parser, text, out);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += parse(parser, text, out);
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink >= 0);
+        return (double) elapsed / iterations;
+    }
+
+    private static int parse(SpanishNumberParser parser, CharSequence text, StringBuilder out) {
+        out.setLength(0);
+        parser.parse(text, out);
+        return out.length();
+    }
+
+    private static void report(String name, double bytes) {
+        if (bytes < 0) System.out.println(name + ": allocation counter unavailable");
+        else System.out.println(String.format(Locale.ROOT, "%s: %.3f bytes/call over %d calls", name, bytes, ITERATIONS));
+    }
+}
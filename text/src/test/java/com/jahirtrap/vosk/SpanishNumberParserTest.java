@@ -0,0 +1,72 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SpanishNumberParserTest {
+    private final SpanishNumberParser parser = new SpanishNumberParser();
+
+    private void check(String expected, String text) {
+        assertEquals(expected, parser.textToNumber(text));
+    }
+
+    @Test
+    public void cardinals() {
+        check("0", "cero");
+        check("21", "veintiuno");
+        check("2500", "dos mil quinientos");
+        check("1000000", "un millón");
+        check("-5", "menos cinco");
+        check("1 2 3", "uno dos tres");
+    }
+
+    @Test
+    public void joinsTensAndUnitsWithY() {
+        check("32", "treinta y dos");
+        check("145", "ciento cuarenta y cinco");
+        check("3 y 4", "tres y cuatro");
+        check("roca y arena", "roca y arena");
+        check("20 y roca", "veinte y roca");
+    }
+
+    @Test
+    public void decimals() {
+        check("3,05", "tres coma cero cinco");
+        check("2.5", "dos punto cinco");
+        check("12,75", "doce coma setenta y cinco");
+        check("coma", "coma");
+    }
+
+    @Test
+    public void ordinals() {
+        check("1º piso", "primer piso");
+        check("la 2ª muestra", "la segunda muestra");
+        check("3º", "tercero");
+    }
+
+    @Test
+    public void units() {
+        check("20 m", "veinte metros");
+        check("15 cm", "quince centímetros");
+        check("30°", "treinta grados");
+        check("5%", "cinco por ciento");
+        check("metros", "metros");
+    }
+
+    @Test
+    public void keepsWordsThatAreNotNumbers() {
+        check("un segundo", "un segundo");
+        check("una quinta parte", "una quinta parte");
+        check("3 y cuarto", "tres y cuarto");
+        check("Número de muestra", "Número de muestra");
+        check("un afloramiento", "un afloramiento");
+    }
+
+    @Test
+    public void appendsToExistingOutput() {
+        StringBuilder out = new StringBuilder("Largo: ");
+        parser.parse("diez metros", out);
+        assertEquals("Largo: 10 m", out.toString());
+    }
+}
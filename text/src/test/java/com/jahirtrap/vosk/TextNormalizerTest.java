@@ -0,0 +1,24 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TextNormalizerTest {
+    @Test
+    public void foldsCaseAndAccents() {
+        assertEquals("numero de afloramiento", TextNormalizer.normalize("  Número de Afloramiento "));
+        assertEquals("canon", TextNormalizer.normalize("Cañón"));
+        assertEquals("pinguino", TextNormalizer.normalize("PINGÜINO"));
+    }
+
+    @Test
+    public void comparesFoldedText() {
+        assertTrue(TextNormalizer.startsWith("linea descripcion", "linea"));
+        assertFalse(TextNormalizer.startsWith("lin", "linea"));
+        assertTrue(TextNormalizer.contentEquals("linea", "linea"));
+        assertFalse(TextNormalizer.contentEquals("linea", "lineas"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class WordTimingsTest {
+    private static final float DELTA = 1e-5f;
+    private static final String FIRST = "{\n  \"result\" : [{\n      \"conf\" : 1.000000,\n      \"end\" : 0.870000,\n"
+            + "      \"start\" : 0.420000,\n      \"word\" : \"roca\"\n    }, {\n      \"conf\" : 0.812345,\n"
+            + "      \"end\" : 1.500000,\n      \"start\" : 0.900000,\n      \"word\" : \"ígnea\"\n    }],\n"
+            + "  \"text\" : \"roca ígnea\"\n}";
+    private static final String SECOND = "{\n  \"result\" : [{\n      \"conf\" : 0.5,\n      \"end\" : 0.6,\n"
+            + "      \"start\" : 0.2,\n      \"word\" : \"cuarzo\"\n    }],\n  \"text\" : \"cuarzo\"\n}";
+
+    @Test
+    public void parsesWordsIntoColumns() {
+        WordTimings timings = new WordTimings();
+        assertEquals(2, timings.parse(FIRST, 10_000));
+        assertEquals(10_000, timings.getEpoch());
+        assertEquals("roca", timings.getWord(0));
+        assertEquals("ígnea", timings.getWord(1));
+        assertEquals(0.42f, timings.getStart(0), DELTA);
+        assertEquals(1.5f, timings.getEnd(1), DELTA);
+        assertEquals(0.812345f, timings.getConfidence(1), DELTA);
+        assertEquals(0, timings.parse("{\n  \"text\" : \"\"\n}", 12_000));
+    }
+
+    @Test
+    public void keepsTimesMonotonicAcrossSessions() {
+        WordTimings timings = new WordTimings();
+        timings.parse(FIRST, 10_000);
+        timings.parse(SECOND, 15_000);
+        assertEquals(3, timings.size());
+        assertEquals(5.2f, timings.getStart(2), DELTA);
+        assertEquals(1, timings.findWordAt(1.2f));
+        assertEquals(2, timings.findWordAt(5.3f));
+        assertEquals(-1, timings.findWordAt(0.1f));
+
+        timings.clear();
+        timings.parse(SECOND, 20_000);
+        assertEquals(20_000, timings.getEpoch());
+        assertEquals(0.2f, timings.getStart(0), DELTA);
+    }
+
+    @Test
+    public void parsesFloatsWithoutAllocating() {
+        assertEquals(0.42f, WordTimings.parseFloat("0.420000", 0, 8), DELTA);
+        assertEquals(-1.5f, WordTimings.parseFloat("x-1.5,", 1, 5), DELTA);
+        assertEquals(3f, WordTimings.parseFloat("3", 0, 1), DELTA);
+        assertEquals(1.25e-3f, WordTimings.parseFloat("1.25e-3", 0, 7), DELTA);
+    }
+}
@@ -0,0 +1,181 @@
+package com.jahirtrap.vosk;
+
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TranscriptionQueue {
+    private static final int SAMPLE_RATE = 16000, CHUNK_SIZE = 32 * 1024;
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+    private final Model model;
+    private final ExecutorService executor;
+    private final ArrayBlockingQueue<byte[]> buffers;
+    private final ArrayBlockingQueue<Recognizer> recognizers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final File outputDir;
+    private final Listener listener;
+    private volatile boolean cancelled = false;
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    public interface Listener {
+        void onFileDone(String name, File output, long elapsedMs);
+
+        void onFileError(String name, Exception e);
+
+        void onIdle();
+    }
+
+    public TranscriptionQueue(Model model, int workers, File outputDir, Listener listener) {
+        this.model = model;
+        this.outputDir = outputDir;
+        this.listener = listener;
+        this.executor = Executors.newFixedThreadPool(workers);
+        this.recognizers = new ArrayBlockingQueue<>(workers);
+        this.buffers = new ArrayBlockingQueue<>(workers);
+    }
+
+    public static int defaultWorkers() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public Future<File> submit(String id, String name, Source source) {
+        pending.incrementAndGet();
+        return executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                File output = transcribe(id, name, source);
+                listener.onFileDone(name, output, (System.nanoTime() - start) / 1000000);
+                return output;
+            } catch (Exception e) {
+                if (!cancelled) listener.onFileError(name, e);
+                throw e;
+            } finally {
+                if (pending.decrementAndGet() == 0 && !cancelled) listener.onIdle();
+            }
+        });
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    // Blocks until no worker touches the model, so the caller may release it afterwards
+    public boolean shutdown() {
+        cancelled = true;
+        executor.shutdownNow();
+        boolean terminated = false;
+        try {
+            terminated = executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Recognizer recognizer;
+        while ((recognizer = recognizers.poll()) != null) recognizer.close();
+        return terminated;
+    }
+
+    private File transcribe(String id, String name, Source source) throws IOException {
+        File output = new File(outputDir, outputName(id, name));
+        if (output.exists()) return output;
+
+        StringBuilder text = new StringBuilder();
+        try (InputStream in = source.open()) {
+            WavReader reader = WavReader.open(in, WavReader.isRaw(name), SAMPLE_RATE);
+            Recognizer recognizer = acquire(reader.getSampleRate());
+            try {
+                InputStream stream = reader.getStream();
+                byte[] buffer = takeBuffer();
+                try {
+                    int read;
+                    while ((read = readChunk(stream, buffer)) > 0) {
+                        if (cancelled) throw new InterruptedIOException("Transcription cancelled");
+                        if (recognizer.acceptWaveForm(buffer, read)) appendText(recognizer.getResult(), text);
+                    }
+                } finally {
+                    buffers.offer(buffer);
+                }
+                appendText(recognizer.getFinalResult(), text);
+            } finally {
+                release(recognizer, reader.getSampleRate());
+            }
+        }
+
+        if (!outputDir.exists() && !outputDir.mkdirs()) throw new IOException("Failed to create " + outputDir);
+        File temp = new File(outputDir, output.getName() + ".tmp");
+        Files.write(temp.toPath(), text.toString().trim().getBytes(StandardCharsets.UTF_8));
+        if (!temp.renameTo(output)) throw new IOException("Failed to write " + output);
+        return output;
+    }
+
+    private Recognizer acquire(int sampleRate) throws IOException {
+        if (sampleRate == SAMPLE_RATE) {
+            Recognizer recognizer = recognizers.poll();
+            if (recognizer != null) return recognizer;
+        }
+        return new Recognizer(model, sampleRate);
+    }
+
+    private void release(Recognizer recognizer, int sampleRate) {
+        if (sampleRate == SAMPLE_RATE && !cancelled) {
+            recognizer.reset();
+            if (recognizers.offer(recognizer)) return;
+        }
+        recognizer.close();
+    }
+
+    // One chunk buffer per worker, allocated on first use
+    private byte[] takeBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[CHUNK_SIZE];
+    }
+
+    // Names alone collide across folders, so the transcript is keyed on the source id too
+    static String outputName(String id, String name) {
+        String base = name.replaceAll("[\\\\/:*?\"<>|]", "_");
+        int dot = base.lastIndexOf('.');
+        if (dot > 0) base = base.substring(0, dot);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(base.length() + 14).append(base).append('-');
+            for (int i = 0; i < 6; i++) hex.append(String.format(Locale.ROOT, "%02x", digest[i]));
+            return hex.append(".txt").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int readChunk(InputStream stream, byte[] buffer) throws IOException {
+        int done = 0;
+        while (done < buffer.length) {
+            int read = stream.read(buffer, done, buffer.length - done);
+            if (read == -1) break;
+            done += read;
+        }
+        return done & ~1;
+    }
+
+    private static void appendText(String json, StringBuilder text) {
+        int length = text.length();
+        if (length > 0) text.append(' ');
+        if (!HypothesisProcessor.readString(json, "\"text\"", text) || text.length() == length + 1)
+            text.setLength(length);
+    }
+}
@@ -0,0 +1,108 @@
+package com.jahirtrap.vosk;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+public class WavReader {
+    private final InputStream stream;
+    private final int sampleRate, channels, bitsPerSample;
+
+    private WavReader(InputStream stream, int sampleRate, int channels, int bitsPerSample) {
+        this.stream = stream;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitsPerSample = bitsPerSample;
+    }
+
+    public static boolean isRaw(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".pcm") || lower.endsWith(".raw");
+    }
+
+    public static WavReader open(InputStream input, boolean raw, int rawSampleRate) throws IOException {
+        InputStream in = input.markSupported() ? input : new BufferedInputStream(input, 64 * 1024);
+        if (raw) return new WavReader(in, rawSampleRate, 1, 16);
+
+        byte[] header = new byte[12];
+        readFully(in, header, header.length);
+        if (!tag(header, 0, "RIFF") || !tag(header, 8, "WAVE")) throw new IOException("Not a WAV file");
+
+        int format = 0, channels = 0, sampleRate = 0, bitsPerSample = 0;
+        byte[] chunk = new byte[8];
+        while (true) {
+            readFully(in, chunk, chunk.length);
+            long size = readInt(chunk, 4) & 0xFFFFFFFFL;
+            if (tag(chunk, 0, "fmt ")) {
+                byte[] fmt = new byte[16];
+                readFully(in, fmt, fmt.length);
+                format = readShort(fmt, 0);
+                channels = readShort(fmt, 2);
+                sampleRate = readInt(fmt, 4);
+                bitsPerSample = readShort(fmt, 14);
+                skip(in, size - fmt.length + (size & 1));
+            } else if (tag(chunk, 0, "data")) {
+                break;
+            } else {
+                skip(in, size + (size & 1));
+            }
+        }
+
+        if (format != 1 || channels != 1 || bitsPerSample != 16)
+            throw new IOException("Unsupported WAV format: " + format + ", " + channels + " ch, " + bitsPerSample + " bit");
+        return new WavReader(in, sampleRate, channels, bitsPerSample);
+    }
+
+    public InputStream getStream() {
+        return stream;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    private static boolean tag(byte[] buffer, int offset, String tag) {
+        for (int i = 0; i < 4; i++) {
+            if (buffer[offset + i] != tag.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int readShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return readShort(buffer, offset) | readShort(buffer, offset + 2) << 16;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            int read = in.read(buffer, done, length - done);
+            if (read == -1) throw new EOFException();
+            done += read;
+        }
+    }
+
+    private static void skip(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) throw new EOFException();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
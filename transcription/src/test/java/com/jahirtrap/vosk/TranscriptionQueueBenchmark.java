@@ -0,0 +1,82 @@
+package com.jahirtrap.vosk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+public class TranscriptionQueueBenchmark {
+    private static final int SAMPLE_RATE = 16000, FILES = 8, SECONDS = 15;
+
+    @Test
+    public void scalesWithWorkers() throws Exception {
+        String modelPath = System.getProperty("vosk.model", "");
+        if (modelPath.isEmpty()) {
+            System.out.println("TranscriptionQueueBenchmark skipped, run with -PvoskModel=<model dir>");
+            return;
+        }
+        LibVosk.setLogLevel(LogLevel.WARNINGS);
+        byte[][] audio = new byte[FILES][];
+        Random random = new Random(1);
+        for (int i = 0; i < FILES; i++) audio[i] = synthesize(random);
+
+        try (Model model = new Model(modelPath)) {
+            int maxWorkers = Math.max(1, Runtime.getRuntime().availableProcessors());
+            for (int workers = 1; workers <= maxWorkers; workers *= 2) {
+                File outputDir = Files.createTempDirectory("transcripts").toFile();
+                TranscriptionQueue queue = new TranscriptionQueue(model, workers, outputDir, new TranscriptionQueue.Listener() {
+                    @Override
+                    public void onFileDone(String name, File output, long elapsedMs) {
+                    }
+
+                    @Override
+                    public void onFileError(String name, Exception e) {
+                    }
+
+                    @Override
+                    public void onIdle() {
+                    }
+                });
+
+                long start = System.nanoTime();
+                ArrayList<Future<File>> results = new ArrayList<>();
+                for (int i = 0; i < FILES; i++) {
+                    byte[] data = audio[i];
+                    results.add(queue.submit("file-" + i, i + ".raw", () -> new ByteArrayInputStream(data)));
+                }
+                for (Future<File> result : results) assertTrue(result.get().exists());
+                long elapsedMs = (System.nanoTime() - start) / 1000000;
+                assertTrue(queue.shutdown());
+                assertEquals(FILES, outputDir.list().length);
+
+                System.out.println(String.format(Locale.ROOT, "%d workers: %d s of audio in %d ms, %.1fx realtime",
+                        workers, FILES * SECONDS, elapsedMs, FILES * SECONDS * 1000f / Math.max(1, elapsedMs)));
+            }
+        }
+    }
+
+    // Tones under low noise, so the decoder does real work without shipping audio fixtures
+    private static byte[] synthesize(Random random) {
+        byte[] data = new byte[SAMPLE_RATE * SECONDS * 2];
+        double frequency = 180 + random.nextInt(120);
+        for (int i = 0; i < data.length / 2; i++) {
+            double envelope = (i / (SAMPLE_RATE / 4)) % 2 == 0 ? 0.3 : 0.02;
+            double sample = envelope * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE) + 0.01 * random.nextGaussian();
+            short value = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample * Short.MAX_VALUE));
+            data[2 * i] = (byte) value;
+            data[2 * i + 1] = (byte) (value >> 8);
+        }
+        return data;
+    }
+}